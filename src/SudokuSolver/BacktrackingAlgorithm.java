@@ -1,104 +1,199 @@
 package SudokuSolver;
 
-import java.util.HashSet;
-
 /**
  * The problem is as follows: Given any 9x9 grid representing a Sudoku puzzle, determine whether or not
- * this puzzle can be solved (under the desired time limit) by using a depth-first search algorithm.
+ * this puzzle can be solved (within the desired search budget) by using a depth-first search algorithm.
+ * The search fills in naked and hidden singles after every guess and always branches on the
+ * empty cell with the fewest candidates.
  * Overall, this is used throughout the package not only to solve puzzles but to check if they are
- * valid and have unique solutions.
+ * valid and have unique solutions. It is one of the engines available through {@link Solver}.
  * 
  * @author Nicols Moro
  */
 
-class BacktrackingAlgorithm {
+class BacktrackingAlgorithm implements Solver {
+	
+	/*
+	 * Workspace reused by every call on this solver: the puzzle is loaded into the board, whose masks and trail
+	 * are reset instead of reallocated. Together with the recursion only using local primitives, this keeps
+	 * the solving path free of heap allocations.
+	 */
+	
+	private final BoardState board = new BoardState();
+	
+	@Override
+	public boolean solve(int[][] sudoku_puzzle, SearchBudget budget) {
+		
+		board.load(sudoku_puzzle);
+		boolean solutionFound = countSolutions(board, 1, budget) == 1;
+		
+		if (solutionFound) {
+			board.copyTo(sudoku_puzzle);
+		}
+		return solutionFound;
+	}
+	
+	@Override
+	public int countSolutions(int[][] sudoku_puzzle, int limit, SearchBudget budget) {
+		
+		board.load(sudoku_puzzle);
+		return countSolutions(board, limit, budget);
+	}
 	
 	/**
-	 * Returns a boolean indicating whether a solution has been found within the desired time limit.
+	 * Same as {@link #countSolutions(int[][], int, SearchBudget)}, but searches on the given board in place. If {@code limit}
+	 * solutions are found, the board is left filled with the last one; otherwise, it is left as it was loaded.
 	 * 
-	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle. Empty cells are filled by 0.
-	 * @param timeLimit  Desired time of execution in miliseconds. If set to 0, there is no upper bound for the computing time.
-	 * @return A boolean that indicates whether said puzzle has been solved under the desired time limit (true).
-	 * The program also returns 'false' if the grid is determined invalid in {@link BoardState}.
+	 * @param board  A board loaded with the puzzle to be solved.
+	 * @param limit  Maximum number of solutions to look for (at least 1).
+	 * @param budget  Search budget to draw from; it may be shared with other searches.
+	 * @return The number of solutions found, from 0 to {@code limit}, or -1 if the budget was exhausted before the search finished.
 	 */
 	
-	static boolean gridSolver(int[][] sudoku_puzzle, long timeLimit) {
+	int countSolutions(BoardState board, int limit, SearchBudget budget) {
 		
-		final long START_TIME = System.currentTimeMillis();
+		if (!board.validGrid) {
+			return 0; // If puzzle determined invalid in BoardState class, immediately stop the program
+		}
 		
-		BoardState board = new BoardState(sudoku_puzzle);
-
-		board.storeEmptyCells();
+		int mark = board.trailSize;
+		int solutionsFound = search(board, limit, budget);
 		
-		int rowCoord;
-		int colCoord;
-		int[] validNums;
-		HashSet<Integer> previousCandidates; // To be used to store previously used candidates to fill a cell which do not yield a (unique) solution.
+		if (solutionsFound != limit) {
+			board.undoTo(mark); // Leave the board as it was given
+		}
+		return solutionsFound;
+	}
+	
+	/**
+	 * Recursive depth-first search. At each node, the singles are filled in first; then the empty cell
+	 * with the fewest candidates is picked and each of its candidates is tried in turn. Every number
+	 * written in the board is recorded in its trail, so backtracking simply empties the cells filled
+	 * since the node was entered.
+	 * 
+	 * @param board  A board loaded with the puzzle to be solved.
+	 * @param limit  Maximum number of solutions to look for (at least 1).
+	 * @param budget  Search budget to draw from, one node per call.
+	 * @return The number of solutions found below this node, from 0 to {@code limit}, or -1 if the budget was exhausted.
+	 * If {@code limit} solutions are found, the board is left filled with the last one.
+	 */
+	
+	private static int search(BoardState board, int limit, SearchBudget budget) {
 		
-		int cellIndex = 0;
-		int emptyCells = board.numEmptyCells;
-		boolean continueSearch = cellIndex < emptyCells;
+		// Check if the search may go on
+		if (!budget.tick()) {
+			return -1;
+		}
 		
-		// For the given empty cell, identify which numbers are valid and which ones have been used before and do not solve the puzzle
-		while (continueSearch) {
-			
-			int[] coords = board.listEmptyCells[cellIndex];
-			rowCoord = coords[0];
-			colCoord = coords[1];
-			board.grid[rowCoord][colCoord] = 0; // Empty the cell if filled with a wrong number before.
-			validNums = board.getValidNumbers(rowCoord, colCoord); // Initially valid
-			
-			if (!board.validGrid) {
-				break; // If puzzle determined invalid in BoardState class, immediately stop the program
+		if (!propagateSingles(board)) {
+			return 0; // Contradiction: a previous entry has to be changed
+		}
+		if (board.numEmptyCells == 0) {
+			return 1;
+		}
+		
+		/* Minimum remaining values: branch on the most constrained cell */
+		
+		int cell = -1;
+		int fewestCandidates = 10;
+		for (int i=0; i<81 && fewestCandidates > 2; i++) {
+			if (board.cells[i] == 0) {
+				int numCandidates = Integer.bitCount(board.getCandidates(i));
+				if (numCandidates < fewestCandidates) {
+					fewestCandidates = numCandidates;
+					cell = i;
+				}
 			}
+		}
+		
+		int candidates = board.getCandidates(cell);
+		int solutionsFound = 0;
+		
+		while (candidates != 0) {
 			
-			previousCandidates = board.backtrackingMap.get(coords); // have been tried before but do not lead to a solution
+			int num = Integer.numberOfTrailingZeros(candidates)+1;
+			candidates &= candidates-1;
 			
-			/*
-			 * Set candidateNum to the next integer to try and fill the present cell.
-			 * Set it to 0 if we need to backtrack, i.e., none of the numbers in this cell lead to a solution, so a previous entry has to be changed.
-			 */
+			int mark = board.trailSize;
+			board.assign(cell, num);
 			
-			int candidateNum = 0;
-			for(Integer i : validNums) {
-				if (!previousCandidates.contains(i)) {
-					candidateNum = i;
-					break;
-				}
+			int found = search(board, limit-solutionsFound, budget);
+			if (found == -1) {
+				return -1;
 			}
+			solutionsFound += found;
+			if (solutionsFound == limit) {
+				return solutionsFound; // Enough solutions: keep the last one in the board
+			}
+			board.undoTo(mark);
+		}
+		return solutionsFound;
+	}
+	
+	/**
+	 * Repeatedly fill in naked singles (cells with a single candidate) and hidden singles (numbers
+	 * that fit in a single cell of a row, column or block) until no more can be found.
+	 * 
+	 * @param board  The board to be filled. Every number written is recorded in its trail.
+	 * @return False if a contradiction was found, i.e., an empty cell or a number in a unit has no place left.
+	 */
+	
+	static boolean propagateSingles(BoardState board) {
+		
+		boolean progress = true;
+		
+		while (progress && board.numEmptyCells > 0) {
 			
-			/*
-			 * If successful, fill the candidate number in the empty cell and add it to the corresponding HashMap entry of "previously tried".
-			 * Else, empty the "previously tried" list and go to the cell we have filled prior to this one.
-			 */
+			progress = false;
 			
-			if (candidateNum != 0) { 
-				board.grid[rowCoord][colCoord] = candidateNum;
-				previousCandidates.add(candidateNum);
-				board.backtrackingMap.put(coords, previousCandidates);
-				cellIndex++;
-			} else if (candidateNum == 0 && cellIndex == 0) {
-				break; // Another option: no candidates left in the very first cell, cannot go back -> Unsolvable
-			} else {
-				board.backtrackingMap.put(coords, new HashSet<Integer>());
-				cellIndex--;
+			// Naked singles
+			for (int cell=0; cell<81; cell++) {
+				if (board.cells[cell] == 0) {
+					int candidates = board.getCandidates(cell);
+					if (candidates == 0) {
+						return false;
+					}
+					if ((candidates & (candidates-1)) == 0) {
+						board.assign(cell, Integer.numberOfTrailingZeros(candidates)+1);
+						progress = true;
+					}
+				}
 			}
 			
-			// Check if backtracking continues or if the desired time was exceeded
-			if (timeLimit == 0) {
-				continueSearch = cellIndex < emptyCells;
-			} else {
-				continueSearch = (cellIndex < emptyCells) && (System.currentTimeMillis()-START_TIME)<timeLimit; 
+			// Hidden singles
+			for (int unit=0; unit<27; unit++) {
+				
+				int used = board.getUnitMask(unit);
+				if (used == BoardState.ALL_DIGITS) {
+					continue; // Full unit: nothing to find
+				}
+				
+				int seenOnce = 0;
+				int seenTwice = 0;
+				for (int cell : BoardState.UNITS[unit]) {
+					int candidates = board.getCandidates(cell);
+					seenTwice |= seenOnce & candidates;
+					seenOnce |= candidates;
+				}
+				
+				if ((seenOnce | used) != BoardState.ALL_DIGITS) {
+					return false;
+				}
+				
+				int hiddenSingles = seenOnce & ~seenTwice;
+				while (hiddenSingles != 0) {
+					int bit = hiddenSingles & -hiddenSingles;
+					hiddenSingles &= hiddenSingles-1;
+					for (int cell : BoardState.UNITS[unit]) {
+						if ((board.getCandidates(cell) & bit) != 0) {
+							board.assign(cell, Integer.numberOfTrailingZeros(bit)+1);
+							progress = true;
+							break;
+						}
+					}
+				}
 			}
-			
-		}
-		
-		// Either the puzzle has been solved (in time) or return 'false'
-
-		if (cellIndex == 0 || !board.validGrid) {
-			return false;
-		} else {
-			return true;
 		}
+		return true;
 	}
 }
\ No newline at end of file
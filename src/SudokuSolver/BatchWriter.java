@@ -0,0 +1,168 @@
+package SudokuSolver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Writes the puzzles of the 5 levels to the database in batches, instead of one statement, one round trip
+ * and one commit per row. One prepared statement is kept per level table: each row is added to the batch of
+ * its level, which is sent with {@code executeBatch} once it holds {@code BATCH_SIZE} rows, and the
+ * transaction is committed every {@code COMMIT_SIZE} rows sent. Autocommit is turned off while writing.
+ * <p>
+ * With PostgreSQL, a batch is still sent as one INSERT per row unless the connection has
+ * {@code reWriteBatchedInserts} set (see {@link DatabaseManagement#BATCH_DB_URL}), in which case the driver
+ * rewrites it into multi-row INSERTs.
+ * <p>
+ * Both sizes can be set from the command line, e.g. {@code -Dsudoku.batchSize=1000 -Dsudoku.commitSize=100000};
+ * {@code -Dsudoku.batchSize=1 -Dsudoku.commitSize=1} writes one row per round trip and per commit, as
+ * was done before.
+ *
+ * @author Nicols Moro
+ */
+
+class BatchWriter implements AutoCloseable {
+	
+	static final int BATCH_SIZE = Integer.getInteger("sudoku.batchSize", 1000);
+	static final int COMMIT_SIZE = Integer.getInteger("sudoku.commitSize", 100_000);
+	
+	private final Connection conn;
+	private final boolean autoCommit; // setting of the connection, restored on close
+	private final PreparedStatement[] statements; // per level (1 to levels)
+	private final int[] pending; // rows in the batch of each level
+	private final int batchSize;
+	private final int commitSize;
+	
+	private long uncommitted; // rows sent since the last commit
+	private long rows;
+	private long nanos; // time spent sending and committing
+	private final long startTime = System.nanoTime();
+	
+	/**
+	 * @param conn  Connection to the database.
+	 * @param sql  INSERT statement of a level, with {@code %d} in place of the level in the table name.
+	 * @param levels  Number of levels.
+	 * @param batchSize  Rows per batch.
+	 * @param commitSize  Rows per transaction; it is rounded up to a whole number of batches.
+	 * @throws SQLException if a statement cannot be prepared.
+	 * @throws IllegalArgumentException if a size is not positive.
+	 */
+	
+	BatchWriter(Connection conn, String sql, int levels, int batchSize, int commitSize) throws SQLException {
+		
+		if (batchSize < 1 || commitSize < 1) {
+			throw new IllegalArgumentException("Batch and commit sizes must be positive: "+batchSize+", "+commitSize);
+		}
+		this.conn = conn;
+		this.batchSize = batchSize;
+		this.commitSize = commitSize;
+		this.autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		this.statements = new PreparedStatement[levels+1];
+		this.pending = new int[levels+1];
+		for (int level=1; level<=levels; level++) {
+			statements[level] = conn.prepareStatement(String.format(sql, level));
+		}
+	}
+	
+	/**
+	 * @param level  Level of the row to be written.
+	 * @return The statement of the level, whose parameters are to be set before calling {@link #add}.
+	 */
+	
+	PreparedStatement statement(int level) {
+		
+		return statements[level];
+	}
+	
+	/**
+	 * Add a row to the batch of its level, once the parameters of its statement have been set; the batch is
+	 * sent if it is full, and the transaction is committed if enough rows have been sent.
+	 *
+	 * @param level  Level of the row.
+	 * @throws SQLException if the batch cannot be sent or committed.
+	 */
+	
+	void add(int level) throws SQLException {
+		
+		statements[level].addBatch();
+		if (++pending[level] == batchSize) {
+			long start = System.nanoTime();
+			send(level);
+			if (uncommitted >= commitSize) {
+				conn.commit();
+				uncommitted = 0;
+			}
+			nanos += System.nanoTime()-start;
+		}
+	}
+	
+	private void send(int level) throws SQLException {
+		
+		statements[level].executeBatch();
+		rows += pending[level];
+		uncommitted += pending[level];
+		pending[level] = 0;
+	}
+	
+	/**
+	 * Send the rows left in the batches of all levels and commit them.
+	 *
+	 * @throws SQLException if a batch cannot be sent or committed.
+	 */
+	
+	void flush() throws SQLException {
+		
+		long start = System.nanoTime();
+		for (int level=1; level<statements.length; level++) {
+			if (pending[level] > 0) {
+				send(level);
+			}
+		}
+		conn.commit();
+		uncommitted = 0;
+		nanos += System.nanoTime()-start;
+	}
+	
+	/**
+	 * Flush the rows left, close the statements and restore the autocommit setting of the connection.
+	 *
+	 * @throws SQLException if the rows left cannot be written.
+	 */
+	
+	@Override
+	public void close() throws SQLException {
+		
+		try {
+			flush();
+		} finally {
+			for (int level=1; level<statements.length; level++) {
+				statements[level].close();
+			}
+			conn.setAutoCommit(autoCommit);
+		}
+	}
+	
+	/**
+	 * @return Number of rows written so far, i.e., sent to the database (and committed after {@link #flush}).
+	 */
+	
+	long getRows() {
+		
+		return rows;
+	}
+	
+	/**
+	 * @return Summary of the rows written and the load time: the rate over the time spent sending and committing,
+	 * and the overall rate, since the writer was created (as those of {@link CopyLoader}).
+	 */
+	
+	@Override
+	public String toString() {
+		
+		double seconds = nanos/1e9;
+		double wallSeconds = (System.nanoTime()-startTime)/1e9;
+		return String.format("Batch writer: %d rows in %.1f s of sending and committing (%.0f rows/s), %.0f rows/s overall, %d rows per batch, %d per commit",
+				rows, seconds, rows/Math.max(seconds, 1e-9), rows/Math.max(wallSeconds, 1e-9), batchSize, commitSize);
+	}
+}
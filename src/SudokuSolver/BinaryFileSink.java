@@ -0,0 +1,103 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the puzzles into a binary file of fixed-size records of {@code RECORD_BYTES} (55) bytes, so that the
+ * i-th puzzle can be read at offset {@code i*RECORD_BYTES}: the level (1 byte), the rating in hundredths (2
+ * bytes, little-endian) and the packed record of the puzzle and its solution (see {@link PuzzleCodec}). The
+ * minimal puzzles have level 0 and their number of givens in place of the rating.
+ * <p>
+ * The records are written into a chunk of {@code CHUNK_BYTES} bytes, which is written to the file once full.
+ *
+ * @author Nicols Moro
+ */
+
+class BinaryFileSink implements PuzzleSink {
+	
+	static final int RECORD_BYTES = 1 + 2 + PuzzleCodec.RECORD_BYTES;
+	
+	private final Path file;
+	private final FileChannel channel;
+	private final ByteBuffer chunk = ByteBuffer.allocate(Math.max(CHUNK_BYTES/RECORD_BYTES, 1)*RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	private byte level;
+	private short rating; // in hundredths
+	
+	private long rows;
+	private final long startTime = System.nanoTime();
+	
+	/**
+	 * @param fileName  File to be written; it is replaced if it exists.
+	 * @throws IOException if the file cannot be created.
+	 */
+	
+	BinaryFileSink(String fileName) throws IOException {
+		
+		this.file = Paths.get(fileName);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	@Override
+	public void startSeed(SeedGenerator.Seed seed, String rating) {
+		
+		this.level = (byte) seed.level;
+		this.rating = (short) Math.round(seed.rating*100);
+	}
+	
+	@Override
+	public void add(byte[] puzzle, byte[] solution, long index) throws IOException {
+		
+		if (!chunk.hasRemaining()) {
+			flushChunk();
+		}
+		chunk.put(level);
+		chunk.putShort(rating);
+		PuzzleCodec.encode(puzzle, solution, chunk);
+		rows++;
+	}
+	
+	@Override
+	public void addMinimal(byte[] puzzle, byte[] solution, int givens) throws IOException {
+		
+		this.level = 0;
+		this.rating = (short) givens;
+		add(puzzle, solution, 0);
+	}
+	
+	private void flushChunk() throws IOException {
+		
+		chunk.flip();
+		while (chunk.hasRemaining()) {
+			channel.write(chunk);
+		}
+		chunk.clear();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		
+		try {
+			flushChunk();
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * @return Summary of the rows written.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		double seconds = (System.nanoTime()-startTime)/1e9;
+		return String.format("Binary file sink: %d rows in %.1f s (%.0f rows/s) to %s, %d bytes",
+				rows, seconds, rows/Math.max(seconds, 1e-9), file, rows*RECORD_BYTES);
+	}
+}
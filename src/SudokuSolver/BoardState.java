@@ -1,216 +1,251 @@
 package SudokuSolver;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
-* Stores a puzzle's grid and contains useful methods to solve it or check if a given solution is unique. 
+* Stores a puzzle's grid and contains useful methods to solve it or check if a given solution is unique.
+*
+* The grid is kept as a flat array of 81 cells (numbered L -> R, T -> B, starting from 0) together with a
+* 9-bit occupancy mask per row, column and block, where bit (n-1) is set when the number n is in use.
+* The masks are updated on every {@link #place} and {@link #remove}, so the candidates of a cell are
+* obtained with a few bit operations and without allocating any memory.
 *
 * @author Nicols Moro.
 */
 
 class BoardState {
 	
-	int[][] grid;
+	static final int ALL_DIGITS = 0x1FF; // bits 0 to 8 set, i.e., all numbers from 1 to 9 are candidates
+	
+	// Lookup tables shared by all boards: row, column and block of each cell, and the 20 peers of each cell
+	static final int[] ROW_OF = new int[81];
+	static final int[] COL_OF = new int[81];
+	static final int[] BLOCK_OF = new int[81];
+	static final int[][] PEERS = new int[81][20];
+	static final int[][] UNITS = new int[27][9]; // cells of each row (0-8), column (9-17) and block (18-26)
+	
+	static {
+		for (int cell=0; cell<81; cell++) {
+			ROW_OF[cell] = cell/9;
+			COL_OF[cell] = cell%9;
+			BLOCK_OF[cell] = (cell/27)*3 + (cell%9)/3;
+			UNITS[ROW_OF[cell]][COL_OF[cell]] = cell;
+			UNITS[9+COL_OF[cell]][ROW_OF[cell]] = cell;
+			UNITS[18+BLOCK_OF[cell]][(ROW_OF[cell]%3)*3 + COL_OF[cell]%3] = cell;
+		}
+		for (int cell=0; cell<81; cell++) {
+			int indx = 0;
+			for (int other=0; other<81; other++) {
+				boolean isPeer = ROW_OF[other] == ROW_OF[cell] || COL_OF[other] == COL_OF[cell] || BLOCK_OF[other] == BLOCK_OF[cell];
+				if (isPeer && other != cell) {
+					PEERS[cell][indx++] = other;
+				}
+			}
+		}
+	}
+	
+	final int[] cells = new int[81];
+	final int[] rowMask = new int[9];
+	final int[] colMask = new int[9];
+	final int[] blockMask = new int[9];
+	
+	// Cells filled during a search, in order, so that they can be emptied again when backtracking
+	final int[] trail = new int[81];
+	int trailSize = 0;
+	
+	BoardState() {
+		
+		// Empty board, to be filled later with load() (e.g., a workspace reused by a solver)
+	}
+	
 	BoardState(int[][] grid) {
 		
-		this.grid = grid;
+		load(grid);
 	}
 	
 	boolean validGrid = true; // any given grid is considered valid until proven otherwise
-	int numEmptyCells = 0; // stores the number of empty cells to measure a puzzle's difficulty in GeneratingAlgorithm
-	int[][] listEmptyCells; // list of all coordinates without a number
-	HashMap<int[], HashSet<Integer>> backtrackingMap = new HashMap<int[], HashSet<Integer>>(); // maps a set of coordinates {row,col} to an array of previously tried candidates
+	int numEmptyCells = 81; // stores the number of empty cells to measure a puzzle's difficulty in GeneratingAlgorithm
 	
 	/**
-	* Display the current state of the board. Mostly used for testing. 
+	* Reset the board and fill it with the numbers of the given grid.
+	* The grid is determined invalid if any number is repeated in a row, column or block.
 	*
-	* @param None.
+	* @param grid  A 2D (9x9) grid representing a Sudoku puzzle. Empty cells are filled by 0.
 	* @return No return value.
 	*/
 	
-	void display() {
+	void load(int[][] grid) {
+		
+		Arrays.fill(this.cells, 0);
+		Arrays.fill(this.rowMask, 0);
+		Arrays.fill(this.colMask, 0);
+		Arrays.fill(this.blockMask, 0);
+		this.validGrid = true;
+		this.numEmptyCells = 81;
+		this.trailSize = 0;
 		
 		for (int r=0; r<=8; r++) {
-			System.out.println();
 			for (int c=0; c<=8; c++) {
-				if(this.grid[r][c] == 0) {
-					System.out.print("#");
-			}
-				else {
-					System.out.print(this.grid[r][c]);
+				int num = grid[r][c];
+				if (num != 0) {
+					int cell = r*9+c;
+					if (!canPlace(cell, num)) {
+						this.validGrid = false;
+					}
+					place(cell, num);
 				}
 			}
 		}
-		System.out.println();
 	}
 	
 	/**
-	* Determines the number of empty cells and stores the coordinates of the empty ones.
+	* Copy the current state of the board into a 2D grid.
 	*
+	* @param grid  A 2D (9x9) array to be overwritten.
 	* @return No return value.
 	*/
 	
-	void storeEmptyCells() {
+	void copyTo(int[][] grid) {
 		
-		for (int r=0; r<=8; r++) {
-			for (int c=0; c<=8; c++) {
-				if(this.grid[r][c] == 0) {
-					numEmptyCells++;
-			}
-				else {
-				}
-			}
+		for (int cell=0; cell<81; cell++) {
+			grid[ROW_OF[cell]][COL_OF[cell]] = this.cells[cell];
 		}
-
-		/** Note: for computational efficiency's sake, it is crucial to fill the cells in order (L -> R and T -> B), which
-		 * is why they must be stored in order in an int[][] (as opposed to storing them in a HashSet and then converting toArray). */
-		
-		listEmptyCells = new int[this.numEmptyCells][2];
-		int indx = 0;
+	}
+	
+	/**
+	* Display the current state of the board. Mostly used for testing.
+	*
+	* @param None.
+	* @return No return value.
+	*/
+	
+	void display() {
 		
 		for (int r=0; r<=8; r++) {
+			System.out.println();
 			for (int c=0; c<=8; c++) {
-				if(this.grid[r][c] == 0) {
-					int[] key = {r,c};
-					this.listEmptyCells[indx] = key;
-					indx++;
-					
-					/*
-					 * Map each "empty coordinate" to an empty array that will contain previous attempts 
-					 * to fill its corresponding cell.
-					 */
-					
-					this.backtrackingMap.put(key, new HashSet<Integer>());
-					
+				if(this.cells[r*9+c] == 0) {
+					System.out.print("#");
+			}
+				else {
+					System.out.print(this.cells[r*9+c]);
 				}
 			}
 		}
+		System.out.println();
 	}
 	
 	/**
-	* Stores all the numbers used in the given row. 
-	* It also determines whether a grid is valid (i.e., has no repeated numbers in that row).
+	* Write a number in an empty cell and mark it as used in the cell's row, column and block.
 	*
-	* @param r  Row of the grid to be scanned.
-	* @return A set containing all used numbers in this row.
+	* @param cell  Index of the cell (from 0 to 80).
+	* @param num  Number from 1 to 9.
+	* @return No return value.
 	*/
 	
-	HashSet<Integer> getRowConstraints(int r) {
-		
-		HashSet<Integer> rowConstraints = new HashSet<Integer>();
-		
-		for (int c=0; c<=8; c++) {
-			
-			if (rowConstraints.contains(this.grid[r][c])) {
-				this.validGrid = false;
-			}
-			
-			if(this.grid[r][c] != 0) {
-				rowConstraints.add(this.grid[r][c]);
-			}
+	void place(int cell, int num) {
+		
+		int bit = 1 << (num-1);
+		this.cells[cell] = num;
+		this.numEmptyCells--;
+		this.rowMask[ROW_OF[cell]] |= bit;
+		this.colMask[COL_OF[cell]] |= bit;
+		this.blockMask[BLOCK_OF[cell]] |= bit;
+	}
+	
+	/**
+	* Empty a cell and release its number in the cell's row, column and block.
+	*
+	* @param cell  Index of the cell (from 0 to 80).
+	* @return No return value.
+	*/
+	
+	void remove(int cell) {
+		
+		int num = this.cells[cell];
+		if (num != 0) {
+			int bit = ~(1 << (num-1));
+			this.cells[cell] = 0;
+			this.numEmptyCells++;
+			this.rowMask[ROW_OF[cell]] &= bit;
+			this.colMask[COL_OF[cell]] &= bit;
+			this.blockMask[BLOCK_OF[cell]] &= bit;
 		}
-		return rowConstraints;
 	}
 	
 	/**
-	* Stores all the numbers used in the given column. 
-	* It also determines whether a grid is valid (i.e., has no repeated numbers in that column).
+	* Same as {@link #place}, but also records the cell in the trail so that it can be undone when backtracking.
 	*
-	* @param c  Column of the grid to be scanned.
-	* @return A set containing all used numbers in this column.
+	* @param cell  Index of the cell (from 0 to 80).
+	* @param num  Number from 1 to 9.
+	* @return No return value.
 	*/
 	
-	HashSet<Integer> getColConstraints(int c) {
+	void assign(int cell, int num) {
 		
-		HashSet<Integer> colConstraints = new HashSet<Integer>();
+		place(cell, num);
+		this.trail[this.trailSize++] = cell;
+	}
+	
+	/**
+	* Empty all the cells assigned since the trail had the given size, in reverse order.
+	*
+	* @param mark  Size of the trail to go back to.
+	* @return No return value.
+	*/
+	
+	void undoTo(int mark) {
 		
-		for (int r=0; r<=8; r++) {
-			
-			if (colConstraints.contains(this.grid[r][c])) {
-				this.validGrid = false;
-			}
-			
-			if(this.grid[r][c] != 0) {
-				colConstraints.add(this.grid[r][c]);
-			}
+		while (this.trailSize > mark) {
+			remove(this.trail[--this.trailSize]);
 		}
-		return colConstraints;
 	}
 	
 	/**
-	* Stores all the numbers used in the block of the given coordinates (numbered L -> R, T -> B, starting from 0). 
-	* It also determines whether a grid is valid (i.e., has no repeated numbers in that block).
+	* Checks whether a number can be written in a cell without breaking the rules of Sudoku.
 	*
-	* @param r  Row coordinate in the grid.
-	* @param c  Column coordinate in the grid.
-	* @return A set containing all used numbers in this block.
+	* @param cell  Index of the cell (from 0 to 80).
+	* @param num  Number from 1 to 9.
+	* @return True if the cell is empty and the number is not used in its row, column or block.
 	*/
 	
-	HashSet<Integer> getBlockConstraints(int r, int c) {
-		
-		HashSet<Integer> blockConstraints = new HashSet<Integer>();
-		
-		final int[][] ROW_COL_GROUPS = {
-											{0,1,2},
-											{3,4,5},
-											{6,7,8}
-										};				// Numbering of the blocks
+	boolean canPlace(int cell, int num) {
 		
-		int[] colsOfBlock = ROW_COL_GROUPS[(c-(c%3))/3]; // stores all columns of the block
-		int[] rowsOfBlock = ROW_COL_GROUPS[(r-(r%3))/3]; // stores all rows of the block
+		return (getCandidates(cell) & (1 << (num-1))) != 0;
+	}
+	
+	/**
+	* Given the index of a cell, it returns what numbers can be used to fill it.
+	*
+	* @param cell  Index of the cell (from 0 to 80).
+	* @return A 9-bit mask of possible numbers to fill the cell (bit n-1 for the number n).
+	* If the cell has already been filled, 0 is returned.
+	*/
+	
+	int getCandidates(int cell) {
 		
-		for(Integer col : colsOfBlock) {
-			for (Integer row : rowsOfBlock) {
-				
-				if (blockConstraints.contains(this.grid[r][c])) {
-					this.validGrid = false;
-				}
-				
-				if(this.grid[row][col] != 0) {
-					blockConstraints.add(this.grid[row][col]);
-				}
-			}
+		if (this.cells[cell] != 0) {
+			return 0;
 		}
-		return blockConstraints;
-		
+		int used = this.rowMask[ROW_OF[cell]] | this.colMask[COL_OF[cell]] | this.blockMask[BLOCK_OF[cell]];
+		return ~used & ALL_DIGITS;
 	}
 	
 	/**
-	* Given a set of row-col coordinates, it returns what numbers can be used to fill the corresponding cell.
-	* It also determines whether a grid is valid by performing individual checks in the previous three functions.
+	* Returns the numbers already used in one of the 27 units of the grid.
 	*
-	* @param r  Row coordinate in the grid.
-	* @param c  Column coordinate in the grid.
-	* @return An array of possible numbers to fill the cell. If the cell has already been filled, an empty set is returned.
+	* @param unit  Index of the unit: rows from 0 to 8, columns from 9 to 17 and blocks from 18 to 26.
+	* @return A 9-bit mask of the numbers used in the unit.
 	*/
 	
-	int[] getValidNumbers(int r, int c) {
+	int getUnitMask(int unit) {
 		
-		HashSet<Integer> validNumbers = new HashSet<Integer>();
-		
-		if (this.grid[r][c] == 0) {
-			
-			HashSet<Integer> allConstraints = new HashSet<Integer>();
-			allConstraints.addAll(getRowConstraints(r));
-			allConstraints.addAll(getColConstraints(c));
-			allConstraints.addAll(getBlockConstraints(r,c));
-			
-			for(int i=1; i<=9; i++) {
-				if (!allConstraints.contains(i)) {
-					validNumbers.add(i);
-				}
-			}
+		if (unit < 9) {
+			return this.rowMask[unit];
+		} else if (unit < 18) {
+			return this.colMask[unit-9];
 		}
-		
-		// Converting HashSet to Array by looping over all elements
-        int[] validNums = new int[validNumbers.size()];
-        int indx = 0;
-        for (Integer i : validNumbers) {
-        	  validNums[indx++] = i;
-        	}
-		return validNums;
-		
+		return this.blockMask[unit-18];
 	}
 	
 }
@@ -0,0 +1,219 @@
+package SudokuSolver;
+
+/**
+ * Computes the minlex form of a terminal pattern: the lexicographically smallest grid (read row by row) among all
+ * the grids equivalent to it under the symmetries of Sudoku, i.e., transposition, permutations of the bands and
+ * stacks, of the rows within each band and of the columns within each stack, and relabeling of the numbers.
+ * Two patterns are essentially the same if and only if they have the same minlex form.
+ * <p>
+ * Instead of trying every symmetry, the search relies on the following:
+ * <ul>
+ * <li>Once the first row and the order of the columns are chosen (2 x 9 x 1296 choices), the relabeling that
+ * makes the grid smallest is the one that turns the first row into 123456789.</li>
+ * <li>The order of the remaining rows can then be chosen greedily: the other two rows of the first band sorted,
+ * the rows of the other bands sorted, and these bands sorted by their first row.</li>
+ * <li>The second row is compared first, digit by digit, which rules out almost all the choices after a few cells.</li>
+ * </ul>
+ * Rows are packed into a {@code long} with 4 bits per cell, so that comparing them numerically is the same as
+ * comparing them lexicographically.
+ *
+ * @author Nicols Moro
+ */
+
+class CanonicalForm {
+	
+	private static final long FIRST_ROW = 0x123456789L; // first row of every minlex form
+	private static final long NO_ROW = 0xFFFFFFFFFL; // larger than any packed row
+	private static final int[][] COLUMN_ORDERS = new int[1296][9]; // all orders of the stacks and of the columns within them
+	private static final int[][] NEW_LABELS = new int[1296][9]; // for each order, 1 + the new position of each column
+	
+	static {
+		int[][] orders3 = {{0,1,2}, {0,2,1}, {1,0,2}, {1,2,0}, {2,0,1}, {2,1,0}};
+		int n = 0;
+		for (int[] stacks : orders3) {
+			for (int[] first : orders3) {
+				for (int[] second : orders3) {
+					for (int[] third : orders3) {
+						int[][] within = {first, second, third};
+						for (int s=0; s<3; s++) {
+							for (int k=0; k<3; k++) {
+								COLUMN_ORDERS[n][3*s+k] = 3*stacks[s] + within[s][k];
+								NEW_LABELS[n][3*stacks[s] + within[s][k]] = 3*s+k + 1;
+							}
+						}
+						n++;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compute the minlex form of a terminal pattern.
+	 * 
+	 * @param pattern  A full, valid 2D (9x9) grid. It is not modified.
+	 * @return The 9 rows of the minlex form, each packed as 9 numbers of 4 bits (most significant first).
+	 */
+	
+	static long[] minlexRows(int[][] pattern) {
+		
+		// The pattern and its transpose, as flat arrays of cells
+		int[][] orientations = new int[2][81];
+		for (int r=0; r<=8; r++) {
+			for (int c=0; c<=8; c++) {
+				orientations[0][r*9+c] = pattern[r][c];
+				orientations[1][c*9+r] = pattern[r][c];
+			}
+		}
+		
+		long[] best = new long[9];
+		best[1] = NO_ROW;
+		long[] rows = new long[9];
+		int[] columnInFirstRow = new int[10];
+		int[] partner = new int[81];
+		
+		for (int[] grid : orientations) {
+			for (int first=0; first<9; first++) {
+				
+				int band = first/3;
+				int second = 3*band + (first%3 == 0 ? 1 : 0);
+				int third = 3*band + (first%3 == 2 ? 1 : 2);
+				int otherBand1 = band == 0 ? 1 : 0;
+				int otherBand2 = band == 2 ? 1 : 2;
+				
+				// The number in a cell is relabeled after the position its column in the first row is moved to,
+				// so that the first row reads 123456789: find that column for every cell
+				for (int c=0; c<9; c++) {
+					columnInFirstRow[grid[first*9 + c]] = c;
+				}
+				for (int cell=0; cell<81; cell++) {
+					partner[cell] = columnInFirstRow[grid[cell]];
+				}
+				
+				for (int k=0; k<1296; k++) {
+					
+					int[] columns = COLUMN_ORDERS[k];
+					int[] label = NEW_LABELS[k];
+					
+					// Build the other two rows of the first band, stopping as soon as both exceed the best second row
+					long a = 0;
+					long b = 0;
+					boolean pruned = false;
+					for (int j=0; j<9 && !pruned; j++) {
+						a = (a << 4) | label[partner[second*9 + columns[j]]];
+						b = (b << 4) | label[partner[third*9 + columns[j]]];
+						long bestPrefix = best[1] >>> 4*(8-j);
+						pruned = a > bestPrefix && b > bestPrefix;
+					}
+					if (pruned) {
+						continue;
+					}
+					rows[1] = Math.min(a, b);
+					rows[2] = Math.max(a, b);
+					
+					// Sort the rows of each of the other bands, then the two bands by their first row
+					sortBand(partner, otherBand1, columns, label, rows, 3);
+					sortBand(partner, otherBand2, columns, label, rows, 6);
+					if (rows[6] < rows[3]) {
+						for (int i=3; i<6; i++) {
+							long temp = rows[i];
+							rows[i] = rows[i+3];
+							rows[i+3] = temp;
+						}
+					}
+					
+					if (isSmaller(rows, best)) {
+						System.arraycopy(rows, 1, best, 1, 8);
+					}
+				}
+			}
+		}
+		best[0] = FIRST_ROW;
+		return best;
+	}
+	
+	/**
+	 * Compute a 64-bit hash of the minlex form of a terminal pattern, which identifies the pattern up to the
+	 * symmetries of Sudoku. Since there are about 5.5e9 essentially different patterns, collisions are
+	 * negligible for any realistic number of seeds.
+	 * 
+	 * @param pattern  A full, valid 2D (9x9) grid.
+	 * @return The hash of its minlex form.
+	 */
+	
+	static long hash(int[][] pattern) {
+		
+		long hash = 0;
+		for (long row : minlexRows(pattern)) {
+			hash = mix(hash ^ row);
+		}
+		return hash;
+	}
+	
+	/**
+	 * Final mixing step of SplitMix64, which spreads every input bit over the whole output.
+	 */
+	
+	private static long mix(long z) {
+		
+		z = (z + 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * @return The relabeled row with its columns in the given order, packed as 9 numbers of 4 bits.
+	 */
+	
+	private static long packRow(int[] partner, int row, int[] columns, int[] label) {
+		
+		long packed = 0;
+		for (int j=0; j<9; j++) {
+			packed = (packed << 4) | label[partner[row*9 + columns[j]]];
+		}
+		return packed;
+	}
+	
+	/**
+	 * Store the 3 rows of a band in ascending order.
+	 * 
+	 * @param band  Index of the band in the grid.
+	 * @param rows  Destination array.
+	 * @param start  Index of the first row in the destination array.
+	 */
+	
+	private static void sortBand(int[] partner, int band, int[] columns, int[] label, long[] rows, int start) {
+		
+		long a = packRow(partner, 3*band, columns, label);
+		long b = packRow(partner, 3*band+1, columns, label);
+		long c = packRow(partner, 3*band+2, columns, label);
+		long temp;
+		if (a > b) {
+			temp = a; a = b; b = temp;
+		}
+		if (b > c) {
+			temp = b; b = c; c = temp;
+		}
+		if (a > b) {
+			temp = a; a = b; b = temp;
+		}
+		rows[start] = a;
+		rows[start+1] = b;
+		rows[start+2] = c;
+	}
+	
+	/**
+	 * @return True if the candidate rows (from the second one on) are lexicographically smaller than the best ones.
+	 */
+	
+	private static boolean isSmaller(long[] rows, long[] best) {
+		
+		for (int i=1; i<9; i++) {
+			if (rows[i] != best[i]) {
+				return rows[i] < best[i];
+			}
+		}
+		return false;
+	}
+}
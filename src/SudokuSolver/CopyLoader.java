@@ -0,0 +1,380 @@
+package SudokuSolver;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Loads the puzzles of the 5 levels into the database with PostgreSQL's {@code COPY ... FROM STDIN}, which
+ * streams the rows of a table in a single statement and is much faster than INSERTs, even batched ones (see
+ * {@link BatchWriter}). The rows are written in the text format (tab-separated columns) or in the binary format
+ * of {@code COPY}, into chunks of {@code CHUNK_BYTES} bytes.
+ * <p>
+ * Each level has {@code SHARDS} COPY streams, each on its own connection and thread, so that the levels (and
+ * the shards of a level) are loaded in parallel while the calling thread keeps encoding rows. The full chunks
+ * of a level are handed out to its streams in turn, and given back once sent; since each level has a fixed
+ * number of chunks, the memory used is bounded and the caller waits whenever the streams fall behind. The
+ * rows of a stream are committed together when the loader is closed.
+ * <p>
+ * The format, the number of streams per level and the chunk size can be set from the command line, e.g.
+ * {@code -Dsudoku.copyFormat=binary -Dsudoku.copyShards=2 -Dsudoku.copyChunk=1048576}.
+ *
+ * @author Nicols Moro
+ */
+
+class CopyLoader implements AutoCloseable {
+	
+	static final boolean BINARY = "binary".equals(System.getProperty("sudoku.copyFormat")); // text by default
+	static final int SHARDS = Integer.getInteger("sudoku.copyShards", 1); // COPY streams per level
+	static final int CHUNK_BYTES = Integer.getInteger("sudoku.copyChunk", 1 << 20);
+	private static final int CHUNKS_PER_STREAM = 3; // one being sent and two waiting
+	private static final int MAX_ROW_BYTES = 2 + 3*4 + 2*SeedPropagator.ENCODED_LENGTH + 16; // binary row with a rating of up to 16 chars
+	
+	// Signature, flags and header extension length of the binary format, and the end of its data
+	private static final byte[] BINARY_HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+	private static final byte[] BINARY_TRAILER = {(byte) 0xFF, (byte) 0xFF};
+	
+	private static final ByteBuffer END = ByteBuffer.allocate(0); // tells a stream that the rows are over
+	
+	/**
+	 * A COPY stream into the table of a level.
+	 */
+	
+	private static class Stream {
+		
+		final Connection conn;
+		final BlockingQueue<ByteBuffer> chunks; // full chunks waiting to be sent
+		Thread thread;
+		volatile SQLException error;
+		long rows; // as reported by the database
+		volatile long sendNanos; // time spent sending the chunks and ending the COPY statement, which commits it
+		
+		Stream(Connection conn, int capacity) {
+			
+			this.conn = conn;
+			this.chunks = new ArrayBlockingQueue<ByteBuffer>(capacity);
+		}
+	}
+	
+	private final Stream[][] streams; // per level (1 to levels) and shard
+	private final BlockingQueue<ByteBuffer>[] freeChunks; // per level
+	private final ByteBuffer[] current; // chunk being filled, per level
+	private final int[] nextShard;
+	private long rows;
+	private final long startTime = System.nanoTime();
+	private long loadNanos;
+	
+	/**
+	 * Open the COPY streams of every level, each on a new connection.
+	 *
+	 * @param url  URL of the database.
+	 * @param user  User of the database.
+	 * @param password  Password of the user.
+	 * @param levels  Number of levels.
+	 * @param shards  Number of streams per level.
+	 * @throws SQLException if a connection cannot be opened.
+	 * @throws IllegalArgumentException if the number of shards or the chunk size is too small.
+	 */
+	
+	@SuppressWarnings("unchecked")
+	CopyLoader(String url, String user, String password, int levels, int shards) throws SQLException {
+		
+		if (shards < 1 || CHUNK_BYTES < MAX_ROW_BYTES) {
+			throw new IllegalArgumentException("COPY needs at least 1 stream per level and chunks of "+MAX_ROW_BYTES+" bytes: "
+					+shards+", "+CHUNK_BYTES);
+		}
+		this.streams = new Stream[levels+1][shards];
+		this.freeChunks = (BlockingQueue<ByteBuffer>[]) new BlockingQueue<?>[levels+1];
+		this.current = new ByteBuffer[levels+1];
+		this.nextShard = new int[levels+1];
+		int chunks = shards*CHUNKS_PER_STREAM;
+		try {
+			for (int level=1; level<=levels; level++) {
+				freeChunks[level] = new ArrayBlockingQueue<ByteBuffer>(chunks);
+				for (int i=0; i<chunks; i++) {
+					freeChunks[level].add(ByteBuffer.allocate(CHUNK_BYTES)); // big-endian, as the binary format
+				}
+				current[level] = freeChunks[level].poll();
+				for (int shard=0; shard<shards; shard++) {
+					streams[level][shard] = new Stream(DriverManager.getConnection(url, user, password), chunks);
+				}
+			}
+		} catch (SQLException e) {
+			closeConnections();
+			throw e;
+		}
+		for (int level=1; level<=levels; level++) {
+			for (int shard=0; shard<shards; shard++) {
+				Stream stream = streams[level][shard];
+				int streamLevel = level;
+				stream.thread = new Thread(() -> load(stream, streamLevel), "copy-loader-"+level+"-"+shard);
+				stream.thread.start();
+			}
+		}
+	}
+	
+	/**
+	 * Add a row to the table of its level.
+	 *
+	 * @param level  Level of the puzzle.
+	 * @param puzzle  The encoded puzzle (see {@link SeedPropagator}).
+	 * @param solution  The encoded solution.
+	 * @param rating  Rating of the puzzle.
+	 * @throws SQLException if a stream of the level has failed, or the calling thread is interrupted while
+	 * waiting for a free chunk.
+	 */
+	
+	void add(int level, byte[] puzzle, byte[] solution, String rating) throws SQLException {
+		
+		ByteBuffer chunk = current[level];
+		if (chunk.remaining() < MAX_ROW_BYTES) {
+			chunk = nextChunk(level);
+		}
+		if (BINARY) {
+			chunk.putShort((short) 3);
+			chunk.putInt(puzzle.length).put(puzzle);
+			chunk.putInt(solution.length).put(solution);
+			chunk.putInt(rating.length());
+			for (int i=0; i<rating.length(); i++) {
+				chunk.put((byte) rating.charAt(i));
+			}
+		} else {
+			chunk.put(puzzle).put((byte) '\t');
+			chunk.put(solution).put((byte) '\t');
+			for (int i=0; i<rating.length(); i++) {
+				chunk.put((byte) rating.charAt(i));
+			}
+			chunk.put((byte) '\n');
+		}
+		rows++;
+	}
+	
+	/**
+	 * Hand the current chunk of a level over to its next stream and take a free one, waiting if there is none.
+	 */
+	
+	private ByteBuffer nextChunk(int level) throws SQLException {
+		
+		Stream stream = streams[level][nextShard[level]];
+		nextShard[level] = (nextShard[level]+1) % streams[level].length;
+		if (stream.error != null) {
+			throw stream.error;
+		}
+		try {
+			long start = System.nanoTime();
+			stream.chunks.put(current[level]);
+			current[level] = freeChunks[level].take();
+			loadNanos += System.nanoTime()-start;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the COPY streams of level "+level, e);
+		}
+		return current[level];
+	}
+	
+	/**
+	 * Run a COPY stream: send the chunks of the level as they come and give them back. If the stream fails,
+	 * whatever the error, the chunks are still given back (unsent) until the end of the rows, so that neither
+	 * the caller nor {@link #close} waits forever.
+	 */
+	
+	private void load(Stream stream, int level) {
+		
+		CopyIn copy = null;
+		try {
+			copy = stream.conn.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY level"+level+" (Puzzle, PuzzleSol, Rating) FROM STDIN"
+					+(BINARY ? " (FORMAT binary)" : ""));
+			if (BINARY) {
+				long start = System.nanoTime();
+				copy.writeToCopy(BINARY_HEADER, 0, BINARY_HEADER.length);
+				stream.sendNanos += System.nanoTime()-start;
+			}
+		} catch (Throwable t) {
+			fail(stream, t);
+		}
+		try {
+			ByteBuffer chunk;
+			while ((chunk = stream.chunks.take()) != END) {
+				try {
+					if (stream.error == null) {
+						long start = System.nanoTime();
+						copy.writeToCopy(chunk.array(), 0, chunk.position());
+						stream.sendNanos += System.nanoTime()-start;
+					}
+				} catch (Throwable t) {
+					fail(stream, t);
+				} finally {
+					chunk.clear();
+					freeChunks[level].put(chunk);
+				}
+			}
+			if (stream.error == null) {
+				long start = System.nanoTime();
+				if (BINARY) {
+					copy.writeToCopy(BINARY_TRAILER, 0, BINARY_TRAILER.length);
+				}
+				stream.rows = copy.endCopy();
+				stream.sendNanos += System.nanoTime()-start;
+			}
+		} catch (InterruptedException e) {
+			fail(stream, new SQLException("COPY stream of level "+level+" interrupted", e));
+		} catch (Throwable t) {
+			fail(stream, t);
+		} finally {
+			if (copy != null && copy.isActive()) {
+				try {
+					copy.cancelCopy();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Record the first error of a stream.
+	 */
+	
+	private static void fail(Stream stream, Throwable t) {
+		
+		if (stream.error == null) {
+			stream.error = t instanceof SQLException ? (SQLException) t : new SQLException("COPY stream failed", t);
+		}
+	}
+	
+	/**
+	 * Send the rows left, end the COPY statements (which commits them) and close the connections. Every stream is
+	 * ended and its thread joined even if some have failed or the calling thread is interrupted, so that no thread
+	 * is left waiting for chunks.
+	 *
+	 * @throws SQLException if a stream has failed or the calling thread was interrupted; the rows of the streams
+	 * that did not fail are still committed.
+	 */
+	
+	@Override
+	public void close() throws SQLException {
+		
+		long start = System.nanoTime();
+		SQLException error = null;
+		boolean interrupted = false;
+		try {
+			for (int level=1; level<streams.length; level++) {
+				if (current[level].position() > 0) {
+					try {
+						nextChunk(level);
+					} catch (SQLException e) {
+						interrupted |= Thread.interrupted(); // cleared to wait for the streams below, and restored at the end
+						if (error == null) {
+							error = e;
+						}
+					}
+				}
+			}
+		} finally {
+			for (int level=1; level<streams.length; level++) {
+				for (Stream stream : streams[level]) {
+					while (true) {
+						try {
+							stream.chunks.put(END);
+							break;
+						} catch (InterruptedException e) {
+							interrupted = true;
+						}
+					}
+				}
+			}
+			for (int level=1; level<streams.length; level++) {
+				for (Stream stream : streams[level]) {
+					while (stream.thread.isAlive()) {
+						try {
+							stream.thread.join();
+						} catch (InterruptedException e) {
+							interrupted = true;
+						}
+					}
+					if (stream.error != null && error == null) {
+						error = stream.error;
+					}
+				}
+			}
+			loadNanos += System.nanoTime()-start;
+			closeConnections();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+			if (error == null) {
+				error = new SQLException("Interrupted while closing the COPY streams");
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+	
+	private void closeConnections() {
+		
+		for (int level=1; level<streams.length; level++) {
+			for (Stream stream : streams[level]) {
+				if (stream != null) {
+					try {
+						stream.conn.close();
+					} catch (SQLException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of rows added so far.
+	 */
+	
+	long getRows() {
+		
+		return rows;
+	}
+	
+	/**
+	 * @return Number of rows loaded by the database, as reported by the streams once closed.
+	 */
+	
+	long getLoadedRows() {
+		
+		long loaded = 0;
+		for (int level=1; level<streams.length; level++) {
+			for (Stream stream : streams[level]) {
+				loaded += stream.rows;
+			}
+		}
+		return loaded;
+	}
+	
+	/**
+	 * @return Summary of the rows loaded and the load time, as that of {@link BatchWriter}: the rate over the time
+	 * spent sending and committing, summed over the streams (i.e., per connection), and the overall rate; and the
+	 * time the caller spent waiting for the streams.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		long sendNanos = 0;
+		for (int level=1; level<streams.length; level++) {
+			for (Stream stream : streams[level]) {
+				sendNanos += stream.sendNanos;
+			}
+		}
+		double seconds = sendNanos/1e9;
+		double wallSeconds = (System.nanoTime()-startTime)/1e9;
+		return String.format("COPY loader: %d rows in %.1f s of sending and committing (%.0f rows/s), %.0f rows/s overall, %d streams, %s format, %.1f s waiting for the streams",
+				rows, seconds, rows/Math.max(seconds, 1e-9), rows/Math.max(wallSeconds, 1e-9),
+				(streams.length-1)*streams[1].length, BINARY ? "binary" : "text", loadNanos/1e9);
+	}
+}
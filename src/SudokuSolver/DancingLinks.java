@@ -0,0 +1,261 @@
+package SudokuSolver;
+
+/**
+ * Solves Sudoku puzzles as an exact cover problem with Knuth's Algorithm X, implemented with
+ * Dancing Links. Each of the 729 possible placements (cell, number) is a row that covers 4 of the
+ * 324 constraints: the cell is filled, and the number is used once in its row, column and block.
+ * <p>
+ * The whole matrix is stored in preallocated arrays of links that are built once per instance.
+ * Covering and uncovering are exact inverses, so after every call the givens are uncovered again
+ * and the matrix is left ready for the next puzzle without being rebuilt.
+ *
+ * @see <a href="https://arxiv.org/abs/cs/0011047">Dancing Links (D. E. Knuth)</a>.
+ *
+ * @author Nicols Moro
+ */
+
+class DancingLinks implements Solver {
+	
+	private static final int COLUMNS = 324;
+	private static final int ROWS = 729;
+	private static final int ROOT = 0;
+	private static final int FIRST_NODE = COLUMNS+1; // Nodes 1 to 324 are the column headers
+	private static final int NODES = FIRST_NODE + 4*ROWS;
+	
+	// Links of the toroidal doubly-linked lists, the column header of each node and the size of each column
+	private final int[] left = new int[NODES];
+	private final int[] right = new int[NODES];
+	private final int[] up = new int[NODES];
+	private final int[] down = new int[NODES];
+	private final int[] column = new int[NODES];
+	private final int[] size = new int[COLUMNS+1];
+	
+	private final int[] givenRows = new int[81]; // Rows selected by the givens of the current puzzle
+	private final int[] chosenRows = new int[81]; // Rows selected at each depth of the search
+	private final boolean[] coveredByGiven = new boolean[COLUMNS+1];
+	private final int[] solution = new int[81]; // Last solution found, one number per cell
+	
+	private int limit;
+	private int solutionsFound;
+	private int numGivens;
+	private SearchBudget budget;
+	private boolean exhausted;
+	
+	DancingLinks() {
+		
+		// Column headers, linked horizontally to the root
+		for (int c=0; c<=COLUMNS; c++) {
+			left[c] = c == 0 ? COLUMNS : c-1;
+			right[c] = c == COLUMNS ? 0 : c+1;
+			up[c] = c;
+			down[c] = c;
+			column[c] = c;
+		}
+		
+		// One row of 4 nodes per placement of a number in a cell
+		for (int row=0; row<ROWS; row++) {
+			
+			int cell = row/9;
+			int digitIndx = row%9;
+			int[] constraints = {
+									cell,
+									81 + BoardState.ROW_OF[cell]*9 + digitIndx,
+									162 + BoardState.COL_OF[cell]*9 + digitIndx,
+									243 + BoardState.BLOCK_OF[cell]*9 + digitIndx
+								};
+								
+			int first = FIRST_NODE + 4*row;
+			for (int k=0; k<4; k++) {
+				int node = first+k;
+				int col = constraints[k]+1;
+				
+				// Insert at the bottom of the column
+				column[node] = col;
+				up[node] = up[col];
+				down[node] = col;
+				down[up[col]] = node;
+				up[col] = node;
+				size[col]++;
+				
+				// Link to the other nodes of the row
+				left[node] = k == 0 ? first+3 : node-1;
+				right[node] = k == 3 ? first : node+1;
+			}
+		}
+	}
+	
+	@Override
+	public boolean solve(int[][] sudoku_puzzle, SearchBudget budget) {
+		
+		if (countSolutions(sudoku_puzzle, 1, budget) != 1) {
+			return false;
+		}
+		for (int cell=0; cell<81; cell++) {
+			sudoku_puzzle[BoardState.ROW_OF[cell]][BoardState.COL_OF[cell]] = solution[cell];
+		}
+		return true;
+	}
+	
+	@Override
+	public int countSolutions(int[][] sudoku_puzzle, int limit, SearchBudget budget) {
+		
+		this.budget = budget;
+		this.limit = limit;
+		this.solutionsFound = 0;
+		this.exhausted = false;
+		
+		boolean validGrid = selectGivens(sudoku_puzzle);
+		if (validGrid) {
+			search(0);
+		}
+		unselectGivens();
+		this.budget = null;
+		
+		return exhausted ? -1 : solutionsFound;
+	}
+	
+	/**
+	 * Select the row of every given, removing its constraints from the matrix.
+	 *
+	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle.
+	 * @return False if two givens share a constraint, i.e., the grid is invalid.
+	 */
+	
+	private boolean selectGivens(int[][] sudoku_puzzle) {
+		
+		numGivens = 0;
+		for (int cell=0; cell<81; cell++) {
+			
+			int num = sudoku_puzzle[BoardState.ROW_OF[cell]][BoardState.COL_OF[cell]];
+			solution[cell] = num;
+			if (num == 0) {
+				continue;
+			}
+			
+			int first = FIRST_NODE + 4*(cell*9 + num-1);
+			for (int node=first; node<first+4; node++) {
+				if (coveredByGiven[column[node]]) {
+					return false; // Constraint already satisfied by another given
+				}
+			}
+			for (int node=first; node<first+4; node++) {
+				coveredByGiven[column[node]] = true;
+				cover(column[node]);
+			}
+			givenRows[numGivens++] = first;
+		}
+		return true;
+	}
+	
+	/**
+	 * Put the rows of the givens back in the matrix, in reverse order.
+	 */
+	
+	private void unselectGivens() {
+		
+		while (numGivens > 0) {
+			int first = givenRows[--numGivens];
+			for (int node=first+3; node>=first; node--) {
+				coveredByGiven[column[node]] = false;
+				uncover(column[node]);
+			}
+		}
+	}
+	
+	/**
+	 * Algorithm X: recursively choose the column with the fewest rows and try each of them.
+	 *
+	 * @param depth  Number of rows chosen so far in the search.
+	 */
+	
+	private void search(int depth) {
+		
+		if (right[ROOT] == ROOT) {
+			solutionsFound++;
+			storeSolution(depth);
+			return;
+		}
+		if (!budget.tick()) {
+			exhausted = true;
+			return;
+		}
+		
+		int col = right[ROOT];
+		for (int c=right[col]; c != ROOT && size[col] > 1; c=right[c]) {
+			if (size[c] < size[col]) {
+				col = c;
+			}
+		}
+		if (size[col] == 0) {
+			return; // Dead end: a constraint cannot be satisfied anymore
+		}
+		
+		cover(col);
+		for (int row=down[col]; row != col && solutionsFound < limit && !exhausted; row=down[row]) {
+			
+			chosenRows[depth] = row;
+			for (int node=right[row]; node != row; node=right[node]) {
+				cover(column[node]);
+			}
+			
+			search(depth+1);
+			
+			for (int node=left[row]; node != row; node=left[node]) {
+				uncover(column[node]);
+			}
+		}
+		uncover(col);
+	}
+	
+	/**
+	 * Write the numbers of the rows chosen in the search on top of the givens.
+	 *
+	 * @param depth  Number of rows chosen in the search.
+	 */
+	
+	private void storeSolution(int depth) {
+		
+		for (int d=0; d<depth; d++) {
+			int row = (chosenRows[d]-FIRST_NODE)/4;
+			solution[row/9] = row%9 + 1;
+		}
+	}
+	
+	/**
+	 * Remove a column from the header list and all the rows that intersect it from the other columns.
+	 *
+	 * @param col  Index of the column header.
+	 */
+	
+	private void cover(int col) {
+		
+		right[left[col]] = right[col];
+		left[right[col]] = left[col];
+		for (int row=down[col]; row != col; row=down[row]) {
+			for (int node=right[row]; node != row; node=right[node]) {
+				down[up[node]] = down[node];
+				up[down[node]] = up[node];
+				size[column[node]]--;
+			}
+		}
+	}
+	
+	/**
+	 * Exact inverse of {@link #cover(int)}.
+	 *
+	 * @param col  Index of the column header.
+	 */
+	
+	private void uncover(int col) {
+		
+		for (int row=up[col]; row != col; row=up[row]) {
+			for (int node=left[row]; node != row; node=left[node]) {
+				size[column[node]]++;
+				down[up[node]] = node;
+				up[down[node]] = node;
+			}
+		}
+		right[left[col]] = col;
+		left[right[col]] = col;
+	}
+}
@@ -17,20 +17,45 @@ class DatabaseManagement {
 	static final String DRIVER = "org.postgresql.Driver";
 	private static final String POSTGRES_DB_URL = "jdbc:postgresql://localhost:5433/postgres";
 	static final String NEW_DB_URL = "jdbc:postgresql://localhost:5433/sudoku";
+	
+	// Same DB, letting the driver rewrite batches into multi-row INSERTs (see BatchWriter), unless set with -Dsudoku.rewriteBatches=false
+	static final String BATCH_DB_URL = NEW_DB_URL+"?reWriteBatchedInserts="+!"false".equals(System.getProperty("sudoku.rewriteBatches"));
 
 	/* Database credentials - to be introduced by the 
 	 * user; forgetting to do so yields a SQLException. */
 	static final String USER = "";
 	static final String PASS = "";
 	
+	// Table of the puzzles of each level, stored as strings
+	static final String LEVEL_TABLE = "CREATE TABLE IF NOT EXISTS level%d (puzzle_id SERIAL PRIMARY KEY, Puzzle varchar(90) NOT NULL, PuzzleSol varchar(90) NOT NULL, Rating varchar(4) NOT NULL);";
+	
+	// Tables of the binary storage modes (see PuzzleCodec): the seeds, and the copies of each level either packed or derived from their seeds.
+	// Each row holds a chunk of copies of one seed, since the overhead of a row and its index entry (about 40 bytes) is far more than a record.
+	static final String SEEDS_TABLE = "CREATE TABLE IF NOT EXISTS seeds (seed_id SERIAL PRIMARY KEY, Level smallint NOT NULL, Record bytea NOT NULL, Rating varchar(4) NOT NULL);";
+	static final String PACKED_TABLE = "CREATE TABLE IF NOT EXISTS level%d_packed (chunk_id BIGSERIAL PRIMARY KEY, Rating varchar(4) NOT NULL, Records bytea NOT NULL);";
+	static final String DERIVED_TABLE = "CREATE TABLE IF NOT EXISTS level%d_derived (Seed integer NOT NULL REFERENCES seeds, Chunk integer NOT NULL, Transforms bytea NOT NULL, PRIMARY KEY (Seed, Chunk));";
+	
+	// Table of the minimal puzzles (see MinimalPuzzleMiner), with the number of givens of each one
+	static final String MINIMAL_TABLE = "CREATE TABLE IF NOT EXISTS minimal (puzzle_id SERIAL PRIMARY KEY, Puzzle varchar(90) NOT NULL, PuzzleSol varchar(90) NOT NULL, Givens smallint NOT NULL);";
+	
 	/**
-	 * Creates a SQL database with 5 different tables, one per each difficulty level.
-	 * Each table has 4 columns:
+	 * Creates a SQL database with 5 different tables, one per each difficulty level, and a table for the
+	 * minimal puzzles (see {@link MinimalPuzzleMiner}), which also stores the number of givens of each puzzle.
+	 * The tables of the binary storage modes are created as well (see {@link PuzzleCodec}): {@code seeds}, with
+	 * the packed record of each seed, and {@code level<N>_packed} and {@code level<N>_derived}, with the packed
+	 * records of the puzzles or the transformation indexes of the copies of each seed, in chunks.
+	 * The columns of each table are:
 	 * <p><ul>
-	 * <li> puzzle_id: A serial number to tell puzzles apart.
-	 * <li> Puzzle: A Sudoku puzzle encoded as a string.
-	 * <li> PuzzleSol: The solution of said puzzle, also as a string.
-	 * <li> Rating: A randomly generated rating from 4 to 5.
+	 * <li> level&lt;N&gt;: puzzle_id, a serial number to tell puzzles apart; Puzzle, a Sudoku puzzle encoded as a
+	 * string; PuzzleSol, the solution of said puzzle, also as a string; and Rating, the rating of its seed as
+	 * given by the {@link DifficultyGrader}.
+	 * <li> seeds: seed_id, a serial number; Level, the level of the seed; Record, its packed record; and Rating.
+	 * <li> level&lt;N&gt;_packed: chunk_id, a serial number; Rating; and Records, the packed records of a chunk of
+	 * puzzles of the same seed, one after another.
+	 * <li> level&lt;N&gt;_derived: Seed, the seed_id of the seed; Chunk, the number of the chunk among those of the
+	 * seed; and Transforms, the indexes of the transformations that give a chunk of its copies (see
+	 * {@link PuzzleTransform}), one after another.
+	 * <li> minimal: puzzle_id; Puzzle; PuzzleSol; and Givens, the number of givens of the puzzle.
 	 * </ul><p>
 	 * 
 	 * @throws SQLException when connection to the database fails or the database already exists.
@@ -70,13 +95,19 @@ class DatabaseManagement {
 			
 			// Create 5 separate tables - one per difficulty level
 			stmt = connection.createStatement();
-			String newTable;
 			for (int diffLevel = 1; diffLevel <= 5; diffLevel++) {
 				
-				newTable = "CREATE TABLE IF NOT EXISTS level"+diffLevel+" (puzzle_id SERIAL PRIMARY KEY, Puzzle varchar(90) NOT NULL, PuzzleSol varchar(90) NOT NULL, Rating varchar(4) NOT NULL);";
-				stmt.executeUpdate(newTable);
+				stmt.executeUpdate(String.format(LEVEL_TABLE, diffLevel));
 				System.out.println("Table 'Level"+diffLevel+"' created");
 			}
+			stmt.executeUpdate(SEEDS_TABLE);
+			for (int diffLevel = 1; diffLevel <= 5; diffLevel++) {
+				stmt.executeUpdate(String.format(PACKED_TABLE, diffLevel));
+				stmt.executeUpdate(String.format(DERIVED_TABLE, diffLevel));
+			}
+			System.out.println("Tables for the packed and derived storage modes created");
+			stmt.executeUpdate(MINIMAL_TABLE);
+			System.out.println("Table 'Minimal' created");
 			System.out.println();
 			connection.close();
 			
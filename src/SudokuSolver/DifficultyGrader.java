@@ -0,0 +1,618 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+/**
+ * Rates how hard a puzzle is for a human player by solving it as one would: after every step, the easiest
+ * technique that makes progress is applied, and the puzzle is scored by the hardest technique it needed.
+ * The techniques are tried in the following order of difficulty:
+ * <ol>
+ * <li>Hidden and naked singles.</li>
+ * <li>Naked and hidden pairs and triples.</li>
+ * <li>Pointing (a number confined to one row or column of a block) and box-line reduction (a number of a
+ * row or column confined to one block).</li>
+ * <li>X-wing.</li>
+ * <li>Chains: simple colouring on the conjugate pairs of a number, and XY-chains through cells with two candidates.</li>
+ * </ol>
+ * Puzzles that still need guessing after all of them are rated as {@link Technique#TRIAL_AND_ERROR}.
+ * <p>
+ * Candidates are kept as 9-bit masks (bit n-1 for the number n), like in {@link BoardState}, so a puzzle is
+ * graded without allocating memory. Instances are workspaces and must not be shared by threads.
+ *
+ * @author Nicols Moro
+ */
+
+class DifficultyGrader {
+	
+	/**
+	 * Solving techniques in order of difficulty, with the rating given to the puzzles that need them.
+	 */
+	
+	enum Technique {
+		
+		HIDDEN_SINGLE(1.0),
+		NAKED_SINGLE(1.2),
+		NAKED_PAIR(2.0),
+		HIDDEN_PAIR(2.2),
+		NAKED_TRIPLE(2.4),
+		HIDDEN_TRIPLE(2.6),
+		POINTING(2.8),
+		BOX_LINE(3.0),
+		X_WING(3.4),
+		SIMPLE_COLOURING(3.8),
+		XY_CHAIN(4.2),
+		TRIAL_AND_ERROR(5.0);
+		
+		final double rating;
+		
+		Technique(double rating) {
+			
+			this.rating = rating;
+		}
+	}
+	
+	private final BoardState board = new BoardState();
+	private final int[] candidates = new int[81]; // Candidates of each empty cell; 0 for filled cells
+	private int numEmptyCells;
+	
+	// Scratch space of the techniques
+	private final int[] positions = new int[9];
+	private final int[] unitPositions = new int[27]; // Positions of a candidate within each unit
+	private final int[] digitPositions = new int[9]; // Positions of each candidate within a unit
+	private final int[] colour = new int[81];
+	private final int[] queue = new int[81];
+	private final int[] reached = new int[81]; // Numbers already forced in each cell of the XY-chains
+	private final int[] chainCells = new int[2*81];
+	private final int[] chainForced = new int[2*81];
+	
+	/**
+	 * Find the hardest technique needed to solve a puzzle.
+	 *
+	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle with a unique solution. It is not modified.
+	 * @return The hardest technique applied.
+	 */
+	
+	Technique grade(int[][] sudoku_puzzle) {
+		
+		board.load(sudoku_puzzle);
+		if (!board.validGrid) {
+			return Technique.TRIAL_AND_ERROR;
+		}
+		for (int cell=0; cell<81; cell++) {
+			candidates[cell] = board.getCandidates(cell);
+		}
+		numEmptyCells = board.numEmptyCells;
+		
+		Technique hardest = Technique.HIDDEN_SINGLE;
+		while (numEmptyCells > 0) {
+			Technique step = applyEasiestTechnique();
+			if (step == null) {
+				return Technique.TRIAL_AND_ERROR;
+			}
+			if (step.compareTo(hardest) > 0) {
+				hardest = step;
+			}
+		}
+		return hardest;
+	}
+	
+	/**
+	 * Apply the first technique that places a number or removes a candidate.
+	 *
+	 * @return The technique applied, or null if none of them makes progress.
+	 */
+	
+	private Technique applyEasiestTechnique() {
+		
+		if (hiddenSingle()) {
+			return Technique.HIDDEN_SINGLE;
+		} else if (nakedSingle()) {
+			return Technique.NAKED_SINGLE;
+		} else if (nakedSubset(2)) {
+			return Technique.NAKED_PAIR;
+		} else if (hiddenSubset(2)) {
+			return Technique.HIDDEN_PAIR;
+		} else if (nakedSubset(3)) {
+			return Technique.NAKED_TRIPLE;
+		} else if (hiddenSubset(3)) {
+			return Technique.HIDDEN_TRIPLE;
+		} else if (pointing()) {
+			return Technique.POINTING;
+		} else if (boxLine()) {
+			return Technique.BOX_LINE;
+		} else if (xWing()) {
+			return Technique.X_WING;
+		} else if (simpleColouring()) {
+			return Technique.SIMPLE_COLOURING;
+		} else if (xyChain()) {
+			return Technique.XY_CHAIN;
+		}
+		return null;
+	}
+	
+	/**
+	 * Fill a cell and remove its number from the candidates of its peers.
+	 *
+	 * @param cell  Index of the cell.
+	 * @param bit  Bit of the number.
+	 */
+	
+	private void place(int cell, int bit) {
+		
+		candidates[cell] = 0;
+		numEmptyCells--;
+		for (int peer : BoardState.PEERS[cell]) {
+			candidates[peer] &= ~bit;
+		}
+	}
+	
+	/**
+	 * Remove candidates from the cells of a unit.
+	 *
+	 * @param unit  Cells of the unit.
+	 * @param digits  Candidates to be removed.
+	 * @param keep  Positions within the unit (as a 9-bit mask) whose cells are left untouched.
+	 * @return True if any candidate has been removed.
+	 */
+	
+	private boolean removeFromUnit(int[] unit, int digits, int keep) {
+		
+		boolean progress = false;
+		for (int pos=0; pos<9; pos++) {
+			int cell = unit[pos];
+			if ((keep & (1 << pos)) == 0 && (candidates[cell] & digits) != 0) {
+				candidates[cell] &= ~digits;
+				progress = true;
+			}
+		}
+		return progress;
+	}
+	
+	/**
+	 * Find the positions of a candidate within every unit, and store them as 9-bit masks in {@code unitPositions}.
+	 *
+	 * @param bit  Bit of the number.
+	 */
+	
+	private void findPositions(int bit) {
+		
+		Arrays.fill(unitPositions, 0);
+		for (int cell=0; cell<81; cell++) {
+			if ((candidates[cell] & bit) != 0) {
+				int row = BoardState.ROW_OF[cell];
+				int col = BoardState.COL_OF[cell];
+				unitPositions[row] |= 1 << col;
+				unitPositions[9+col] |= 1 << row;
+				unitPositions[18+BoardState.BLOCK_OF[cell]] |= 1 << ((row%3)*3 + col%3);
+			}
+		}
+	}
+	
+	/* SINGLES */
+	
+	/**
+	 * Place a number that only fits in one cell of a unit.
+	 */
+	
+	private boolean hiddenSingle() {
+		
+		for (int[] unit : BoardState.UNITS) {
+			int once = 0;
+			int twice = 0;
+			for (int cell : unit) {
+				twice |= once & candidates[cell];
+				once |= candidates[cell];
+			}
+			int singles = once & ~twice;
+			if (singles != 0) {
+				int bit = singles & -singles;
+				for (int cell : unit) {
+					if ((candidates[cell] & bit) != 0) {
+						place(cell, bit);
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Fill a cell that has a single candidate.
+	 */
+	
+	private boolean nakedSingle() {
+		
+		for (int cell=0; cell<81; cell++) {
+			if (candidates[cell] != 0 && (candidates[cell] & (candidates[cell]-1)) == 0) {
+				place(cell, candidates[cell]);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/* PAIRS AND TRIPLES */
+	
+	/**
+	 * Find n cells of a unit whose candidates are n numbers in total, and remove these numbers
+	 * from the other cells of the unit.
+	 *
+	 * @param n  Size of the subset (2 or 3).
+	 */
+	
+	private boolean nakedSubset(int n) {
+		
+		for (int[] unit : BoardState.UNITS) {
+			int count = 0;
+			for (int pos=0; pos<9; pos++) {
+				int numCandidates = Integer.bitCount(candidates[unit[pos]]);
+				if (numCandidates >= 2 && numCandidates <= n) {
+					positions[count++] = pos;
+				}
+			}
+			for (int i=0; i<count; i++) {
+				for (int j=i+1; j<count; j++) {
+					int digits = candidates[unit[positions[i]]] | candidates[unit[positions[j]]];
+					int cells = (1 << positions[i]) | (1 << positions[j]);
+					if (n == 2) {
+						if (Integer.bitCount(digits) == 2 && removeFromUnit(unit, digits, cells)) {
+							return true;
+						}
+						continue;
+					}
+					for (int k=j+1; k<count; k++) {
+						int tripleDigits = digits | candidates[unit[positions[k]]];
+						if (Integer.bitCount(tripleDigits) == 3 && removeFromUnit(unit, tripleDigits, cells | (1 << positions[k]))) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Find n numbers that only fit in the same n cells of a unit, and remove the other candidates of these cells.
+	 *
+	 * @param n  Size of the subset (2 or 3).
+	 */
+	
+	private boolean hiddenSubset(int n) {
+		
+		for (int[] unit : BoardState.UNITS) {
+			Arrays.fill(digitPositions, 0);
+			for (int pos=0; pos<9; pos++) {
+				for (int digits=candidates[unit[pos]]; digits != 0; digits &= digits-1) {
+					digitPositions[Integer.numberOfTrailingZeros(digits)] |= 1 << pos;
+				}
+			}
+			int count = 0;
+			for (int digit=0; digit<9; digit++) {
+				int numCells = Integer.bitCount(digitPositions[digit]);
+				if (numCells >= 2 && numCells <= n) {
+					positions[count++] = digit;
+				}
+			}
+			for (int i=0; i<count; i++) {
+				for (int j=i+1; j<count; j++) {
+					int digits = (1 << positions[i]) | (1 << positions[j]);
+					int cells = digitPositions[positions[i]] | digitPositions[positions[j]];
+					if (n == 2) {
+						if (Integer.bitCount(cells) == 2 && removeFromUnit(unit, ~digits & BoardState.ALL_DIGITS, ~cells)) {
+							return true;
+						}
+						continue;
+					}
+					for (int k=j+1; k<count; k++) {
+						int tripleCells = cells | digitPositions[positions[k]];
+						int tripleDigits = digits | (1 << positions[k]);
+						if (Integer.bitCount(tripleCells) == 3 && removeFromUnit(unit, ~tripleDigits & BoardState.ALL_DIGITS, ~tripleCells)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/* POINTING AND BOX-LINE REDUCTION */
+	
+	/**
+	 * If a number only fits in one row (or column) of a block, remove it from the rest of that row (or column).
+	 */
+	
+	private boolean pointing() {
+		
+		for (int digit=0; digit<9; digit++) {
+			int bit = 1 << digit;
+			findPositions(bit);
+			for (int block=0; block<9; block++) {
+				int[] unit = BoardState.UNITS[18+block];
+				int found = unitPositions[18+block];
+				if (found == 0) {
+					continue;
+				}
+				
+				// Positions within a block: rows are 3 consecutive bits, columns are bits 3 apart
+				for (int line=0; line<3; line++) {
+					if ((found & ~(0x7 << 3*line)) == 0) {
+						int row = BoardState.ROW_OF[unit[3*line]];
+						if (removeFromUnit(BoardState.UNITS[row], bit, 0x7 << BoardState.COL_OF[unit[0]])) {
+							return true;
+						}
+					}
+					if ((found & ~(0x49 << line)) == 0) {
+						int col = BoardState.COL_OF[unit[line]];
+						if (removeFromUnit(BoardState.UNITS[9+col], bit, 0x7 << BoardState.ROW_OF[unit[0]])) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * If a number of a row or column only fits in one block, remove it from the rest of that block.
+	 */
+	
+	private boolean boxLine() {
+		
+		for (int digit=0; digit<9; digit++) {
+			int bit = 1 << digit;
+			findPositions(bit);
+			for (int line=0; line<18; line++) {
+				int[] unit = BoardState.UNITS[line];
+				int found = unitPositions[line];
+				for (int third=0; third<3 && found != 0; third++) {
+					if ((found & ~(0x7 << 3*third)) == 0) {
+						int[] block = BoardState.UNITS[18+BoardState.BLOCK_OF[unit[3*third]]];
+						int keep = 0;
+						for (int pos=0; pos<9; pos++) {
+							boolean inLine = line < 9 ? BoardState.ROW_OF[block[pos]] == line : BoardState.COL_OF[block[pos]] == line-9;
+							if (inLine) {
+								keep |= 1 << pos;
+							}
+						}
+						if (removeFromUnit(block, bit, keep)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/* X-WING */
+	
+	/**
+	 * If a number only fits in the same two columns of two rows, remove it from the rest of these columns
+	 * (and likewise with rows and columns swapped).
+	 */
+	
+	private boolean xWing() {
+		
+		for (int digit=0; digit<9; digit++) {
+			int bit = 1 << digit;
+			findPositions(bit);
+			for (int base=0; base<=9; base+=9) {
+				int cover = 9-base; // Columns cover rows, and vice versa
+				for (int i=0; i<9; i++) {
+					int found = unitPositions[base+i];
+					if (Integer.bitCount(found) != 2) {
+						continue;
+					}
+					for (int j=i+1; j<9; j++) {
+						if (unitPositions[base+j] != found) {
+							continue;
+						}
+						int keep = (1 << i) | (1 << j);
+						boolean progress = false;
+						for (int pos=0; pos<9; pos++) {
+							if ((found & (1 << pos)) != 0) {
+								progress |= removeFromUnit(BoardState.UNITS[cover+pos], bit, keep);
+							}
+						}
+						if (progress) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/* CHAINS */
+	
+	/**
+	 * Colour the chains of conjugate pairs of a number (the only two cells of a unit where it fits) with two
+	 * alternating colours, one of which must be true. A colour that appears twice in a unit is false, and
+	 * a cell that sees both colours of a chain cannot hold the number.
+	 */
+	
+	private boolean simpleColouring() {
+		
+		for (int digit=0; digit<9; digit++) {
+			int bit = 1 << digit;
+			findPositions(bit);
+			Arrays.fill(colour, -1);
+			int numColours = 0;
+			
+			for (int start=0; start<81; start++) {
+				if (colour[start] != -1 || (candidates[start] & bit) == 0) {
+					continue;
+				}
+				
+				// Breadth-first search along the conjugate pairs of the number
+				int head = 0;
+				int tail = 0;
+				int first = numColours;
+				colour[start] = first;
+				queue[tail++] = start;
+				while (head < tail) {
+					int cell = queue[head++];
+					for (int k=0; k<3; k++) {
+						int unit = k == 0 ? BoardState.ROW_OF[cell] : k == 1 ? 9+BoardState.COL_OF[cell] : 18+BoardState.BLOCK_OF[cell];
+						int found = unitPositions[unit];
+						if (Integer.bitCount(found) != 2) {
+							continue;
+						}
+						for (int pos=0; pos<9; pos++) {
+							int other = BoardState.UNITS[unit][pos];
+							if ((found & (1 << pos)) != 0 && colour[other] == -1) {
+								colour[other] = colour[cell] ^ 1;
+								queue[tail++] = other;
+							}
+						}
+					}
+				}
+				numColours += 2;
+				if (tail > 2 && eliminateByColours(bit, first, tail)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Apply the colouring rules to the chain just coloured with {@code first} and {@code first+1}.
+	 *
+	 * @param bit  Bit of the number.
+	 * @param first  First colour of the chain.
+	 * @param length  Number of cells of the chain, stored in {@code queue}.
+	 * @return True if any candidate has been removed.
+	 */
+	
+	private boolean eliminateByColours(int bit, int first, int length) {
+		
+		// Colour wrap: two cells of the same colour see each other, so that colour is false
+		for (int i=0; i<length; i++) {
+			for (int j=i+1; j<length; j++) {
+				int a = queue[i];
+				int b = queue[j];
+				if (colour[a] == colour[b] && sees(a, b)) {
+					for (int k=0; k<length; k++) {
+						if (colour[queue[k]] == colour[a]) {
+							candidates[queue[k]] &= ~bit;
+						}
+					}
+					return true;
+				}
+			}
+		}
+		
+		// Colour trap: a cell outside the chain that sees both colours
+		boolean progress = false;
+		for (int cell=0; cell<81; cell++) {
+			if ((candidates[cell] & bit) == 0 || colour[cell] == first || colour[cell] == first+1) {
+				continue;
+			}
+			boolean seesFirst = false;
+			boolean seesSecond = false;
+			for (int peer : BoardState.PEERS[cell]) {
+				seesFirst |= colour[peer] == first;
+				seesSecond |= colour[peer] == first+1;
+			}
+			if (seesFirst && seesSecond) {
+				candidates[cell] &= ~bit;
+				progress = true;
+			}
+		}
+		return progress;
+	}
+	
+	/**
+	 * Follow chains of cells with two candidates, each seeing the next one: if the first cell does not hold x,
+	 * every following cell is forced, and if one of them is then forced to x, any cell that sees both ends
+	 * cannot hold x. The chains are explored breadth-first, reaching each (cell, forced number) only once.
+	 */
+	
+	private boolean xyChain() {
+		
+		for (int start=0; start<81; start++) {
+			if (Integer.bitCount(candidates[start]) != 2) {
+				continue;
+			}
+			for (int digits=candidates[start]; digits != 0; digits &= digits-1) {
+				int bit = digits & -digits;
+				if (!anyPeerHas(start, bit)) {
+					continue; // No candidate could be removed by a chain that starts here
+				}
+				Arrays.fill(reached, 0);
+				
+				int head = 0;
+				int tail = 0;
+				chainCells[tail] = start;
+				chainForced[tail++] = candidates[start] & ~bit;
+				reached[start] = candidates[start] & ~bit;
+				while (head < tail) {
+					int cell = chainCells[head];
+					int forced = chainForced[head++];
+					for (int next : BoardState.PEERS[cell]) {
+						int pair = candidates[next];
+						if ((pair & forced) == 0 || Integer.bitCount(pair) != 2 || (reached[next] & pair & ~forced) != 0) {
+							continue;
+						}
+						int nextForced = pair & ~forced;
+						if (nextForced == bit && next != start && removeSeenByBoth(start, next, bit)) {
+							return true;
+						}
+						reached[next] |= nextForced;
+						chainCells[tail] = next;
+						chainForced[tail++] = nextForced;
+					}
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return True if any peer of the cell has the given candidate.
+	 */
+	
+	private boolean anyPeerHas(int cell, int bit) {
+		
+		for (int peer : BoardState.PEERS[cell]) {
+			if ((candidates[peer] & bit) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Remove a candidate from all the cells that see both of the given cells.
+	 *
+	 * @return True if any candidate has been removed.
+	 */
+	
+	private boolean removeSeenByBoth(int a, int b, int bit) {
+		
+		boolean progress = false;
+		for (int peer : BoardState.PEERS[a]) {
+			if (peer != b && (candidates[peer] & bit) != 0 && sees(peer, b)) {
+				candidates[peer] &= ~bit;
+				progress = true;
+			}
+		}
+		return progress;
+	}
+	
+	/**
+	 * @return True if two different cells share a row, column or block.
+	 */
+	
+	private static boolean sees(int a, int b) {
+		
+		return BoardState.ROW_OF[a] == BoardState.ROW_OF[b] || BoardState.COL_OF[a] == BoardState.COL_OF[b]
+				|| BoardState.BLOCK_OF[a] == BoardState.BLOCK_OF[b];
+	}
+}
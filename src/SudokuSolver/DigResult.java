@@ -0,0 +1,41 @@
+package SudokuSolver;
+
+/**
+ * Outcome of digging a terminal pattern with {@link GeneratingAlgorithm#generatePuzzle}. Every cell is only
+ * dug once the puzzle is known to keep a unique solution, so the puzzle obtained so far is always valid: when
+ * the search budget runs out, it is kept as a checkpoint and the digging is resumed from it with a new order
+ * and a new budget, instead of starting over with another pattern.
+ *
+ * @author Nicols Moro
+ */
+
+class DigResult {
+	
+	enum Status {
+		COMPLETE, // every cell has been tried, or the desired number of givens has been reached
+		PARTIAL, // the budget ran out, but the checkpoint already meets the requirements of the level
+		FAILED // the budget ran out and the checkpoint has too many givens for the level
+	}
+	
+	final Status status;
+	final int[][] puzzle; // uniquely solvable in every case
+	final int resumes; // number of times the digging was resumed from a checkpoint
+	final long nodes; // search nodes spent, over all the resumes
+	
+	DigResult(Status status, int[][] puzzle, int resumes, long nodes) {
+		
+		this.status = status;
+		this.puzzle = puzzle;
+		this.resumes = resumes;
+		this.nodes = nodes;
+	}
+	
+	/**
+	 * @return True if the budget ran out at least once, i.e., if the whole pattern used to be discarded.
+	 */
+	
+	boolean wasInterrupted() {
+		
+		return resumes > 0 || status != Status.COMPLETE;
+	}
+}
@@ -0,0 +1,143 @@
+package SudokuSolver;
+
+/**
+ * Keeps the state of a puzzle while it is being dug, so that each uniqueness check only deals with the
+ * cell being dug instead of solving the whole puzzle again. The board (with its candidate masks) is loaded
+ * once from the terminal pattern, and each cell is then emptied and, if need be, restored in place.
+ * <p>
+ * Since the puzzle had a unique solution (the pattern) before a cell is dug, it still has a unique solution
+ * afterwards if and only if no solution has another number in that cell. Hence:
+ * <ul>
+ * <li>If the original number is forced in the cell, i.e., it is its only candidate (naked single) or the
+ * cell is the only place left for it in one of its units (hidden single), the cell is dug without any search.
+ * The same holds if filling in the singles of the dug puzzle puts the number back in the cell.</li>
+ * <li>Otherwise, only the other candidates left in the cell after filling in the singles are tried, each
+ * search starting from the filled-in board, and the search stops at the first solution found; the original
+ * solution is never searched for again.</li>
+ * </ul>
+ * When a cell has to stay, the other solution found is kept as a counterexample: the cells where it differs
+ * from the original solution form an unavoidable set of the pattern (see {@link MinimalPuzzleMiner}).
+ *
+ * @author Nicols Moro
+ */
+
+class DigSession {
+	
+	private final BacktrackingAlgorithm searcher;
+	private final BoardState board = new BoardState();
+	private final int[] counterexample = new int[81]; // other solution found by the last check that failed
+	private boolean hasCounterexample = false;
+	
+	/**
+	 * @param searcher  Solver used for the searches, which run on the board of the session in place.
+	 */
+	
+	DigSession(BacktrackingAlgorithm searcher) {
+		
+		this.searcher = searcher;
+	}
+	
+	/**
+	 * Start a new session on a terminal pattern, or on a puzzle already known to have a unique solution.
+	 *
+	 * @param pattern  A valid 2D (9x9) grid with a unique solution. It is not modified.
+	 */
+	
+	void start(int[][] pattern) {
+		
+		board.load(pattern);
+		hasCounterexample = false;
+	}
+	
+	/**
+	 * Dig a cell if the puzzle still has a unique solution without it; otherwise, leave it as it was.
+	 *
+	 * @param r  Row coordinate of the cell.
+	 * @param c  Column coordinate of the cell.
+	 * @param budget  Search budget shared by all the checks of the puzzle.
+	 * @return 1 if the cell has been dug, 0 if it has to stay, or -1 if the budget ran out (the cell stays).
+	 */
+	
+	int tryDig(int r, int c, SearchBudget budget) {
+		
+		int cell = r*9+c;
+		int num = board.cells[cell];
+		int bit = 1 << (num-1);
+		board.remove(cell);
+		hasCounterexample = false;
+		
+		if (isForced(cell, bit)) {
+			return 1;
+		}
+		
+		// Fill in the singles of the dug puzzle: every number they place is shared by all its solutions
+		int mark = board.trailSize;
+		BacktrackingAlgorithm.propagateSingles(board);
+		if (board.cells[cell] == num) {
+			board.undoTo(mark);
+			return 1;
+		}
+		
+		// Look for a solution with any other number left in the cell
+		int result = 1;
+		int others = board.getCandidates(cell) & ~bit;
+		while (others != 0 && result == 1) {
+			int other = Integer.numberOfTrailingZeros(others)+1;
+			others &= others-1;
+			
+			int guess = board.trailSize;
+			board.assign(cell, other);
+			int found = searcher.countSolutions(board, 1, budget);
+			if (found == 1) {
+				System.arraycopy(board.cells, 0, counterexample, 0, 81);
+				hasCounterexample = true;
+			}
+			board.undoTo(guess);
+			
+			if (found != 0) {
+				result = found == 1 ? 0 : -1; // A second solution, or no more budget
+			}
+		}
+		board.undoTo(mark);
+		if (result != 1) {
+			board.place(cell, num);
+		}
+		return result;
+	}
+	
+	/**
+	 * @return The other solution found by the last call to {@link #tryDig} if it returned 0, as 81 cells
+	 * (L -> R, T -> B), or null otherwise. The array is reused by the next call.
+	 */
+	
+	int[] getCounterexample() {
+		
+		return hasCounterexample ? counterexample : null;
+	}
+	
+	/**
+	 * @return True if the number removed from an empty cell is the only one it can take, or if the cell is
+	 * the only place left for that number in its row, column or block.
+	 */
+	
+	private boolean isForced(int cell, int bit) {
+		
+		if (board.getCandidates(cell) == bit) {
+			return true;
+		}
+		int[] units = {BoardState.ROW_OF[cell], 9+BoardState.COL_OF[cell], 18+BoardState.BLOCK_OF[cell]};
+		for (int unit : units) {
+			boolean elsewhere = false;
+			for (int other : BoardState.UNITS[unit]) {
+				if (other != cell && (board.getCandidates(other) & bit) != 0) {
+					elsewhere = true;
+					break;
+				}
+			}
+			if (!elsewhere) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,111 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Stores the puzzles in an embedded database (e.g., H2 or SQLite), given by its JDBC URL, whose driver must be
+ * available at run time. The database has one table per level, as the PostgreSQL one (see
+ * {@link DatabaseManagement}), but without the serial id, whose syntax is not portable; the tables are created
+ * if they do not exist, and the puzzles are written with batched INSERTs (see {@link BatchWriter}). The minimal
+ * puzzles go to the table {@code minimal}, which is created along with their writer when the first one is added.
+ *
+ * @author Nicols Moro
+ */
+
+class EmbeddedDbSink implements PuzzleSink {
+	
+	static final String LEVEL_TABLE = "CREATE TABLE IF NOT EXISTS level%d (Puzzle varchar(90) NOT NULL, PuzzleSol varchar(90) NOT NULL, Rating varchar(4) NOT NULL)";
+	static final String MINIMAL_TABLE = "CREATE TABLE IF NOT EXISTS minimal (Puzzle varchar(90) NOT NULL, PuzzleSol varchar(90) NOT NULL, Givens smallint NOT NULL)";
+	
+	private final String url;
+	private final Connection conn;
+	private final BatchWriter writer;
+	private BatchWriter minimalWriter;
+	private int level;
+	private String rating;
+	
+	/**
+	 * @param url  JDBC URL of the database.
+	 * @throws SQLException if the database cannot be opened or its tables cannot be created.
+	 */
+	
+	EmbeddedDbSink(String url) throws SQLException {
+		
+		this.url = url;
+		this.conn = DriverManager.getConnection(url);
+		try (Statement stmt = conn.createStatement()) {
+			for (int diffLevel = 1; diffLevel <= 5; diffLevel++) {
+				stmt.executeUpdate(String.format(LEVEL_TABLE, diffLevel));
+			}
+		}
+		this.writer = new BatchWriter(conn, "INSERT INTO level%d (Puzzle, PuzzleSol, Rating) VALUES (?, ?, ?)", 5,
+				BatchWriter.BATCH_SIZE, BatchWriter.COMMIT_SIZE);
+	}
+	
+	@Override
+	public void startSeed(SeedGenerator.Seed seed, String rating) {
+		
+		this.level = seed.level;
+		this.rating = rating;
+	}
+	
+	@Override
+	public void add(byte[] puzzle, byte[] solution, long index) throws IOException {
+		
+		try {
+			PreparedStatement st = writer.statement(level);
+			st.setString(1, new String(puzzle, StandardCharsets.US_ASCII));
+			st.setString(2, new String(solution, StandardCharsets.US_ASCII));
+			st.setString(3, rating);
+			writer.add(level);
+		} catch (SQLException e) {
+			throw new IOException("Could not store the puzzle in "+url, e);
+		}
+	}
+	
+	@Override
+	public void addMinimal(byte[] puzzle, byte[] solution, int givens) throws IOException {
+		
+		try {
+			if (minimalWriter == null) {
+				try (Statement stmt = conn.createStatement()) {
+					stmt.executeUpdate(MINIMAL_TABLE);
+				}
+				minimalWriter = PostgresSink.minimalWriter(conn);
+			}
+			PostgresSink.addMinimal(minimalWriter, puzzle, solution, givens);
+		} catch (SQLException e) {
+			throw new IOException("Could not store the minimal puzzle in "+url, e);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		
+		try {
+			if (minimalWriter != null) {
+				minimalWriter.close(); // before the writer, which restores the autocommit setting of the connection
+			}
+			writer.close();
+			conn.close();
+		} catch (SQLException e) {
+			throw new IOException("Could not store the last puzzles in "+url, e);
+		}
+	}
+	
+	/**
+	 * @return Summary of the writers.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		return (minimalWriter == null ? writer : minimalWriter)+" into "+url;
+	}
+}
@@ -1,7 +1,7 @@
 package SudokuSolver;
 
 import java.util.Arrays;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * This class solves the following problem: given a fully solved Sudoku grid, how can we generate a puzzle
@@ -10,72 +10,118 @@ import java.util.Random;
  * To this end, the algorithm provided in Page 12 of the following article is used.
  * @see <a href="http://zhangroup.aporc.org/images/files/Paper_3485.pdf">Referenced article</a>.
  * 
+ * Each seed puzzle is dug by its own instance, which holds the restrictions and the search budget of that
+ * puzzle; nothing is shared between instances, so different threads can dig different seeds at once.
+ * 
  * @author Nicols Moro.
  */
 
 class GeneratingAlgorithm {
 	
+	private final static long PUZZLE_NODE_LIM = Long.getLong("sudoku.digNodes", 100000); // Search nodes shared by all uniqueness checks of a puzzle; can be shortened, if desired.
+	private final static long PUZZLE_TIME_LIM = 1_000_000_000; // Safety net of 1 second (in nanoseconds) in case the node limit is too generous.
+	private final static int MAX_RESUMES = 2; // Times the digging goes on from a checkpoint after running out of budget
+	
+	private final int level;
+	private final Solver solver;
+	private final SplittableRandom random;
+	private final DigSession session; // incremental checks; only available with the backtracking engine
+	
 	// Declaring restriction parameters on the puzzle's generation (see OPERATOR 2).
-	private static int totalBound;
-	private static int rowcolBound;
-	private final static long PUZZLE_TIME_LIM = 1000; // Time of 1 second; can be shortened, if desired.
-	private static boolean exceedTimeLim;
+	private int totalBound;
+	private int rowcolBound;
+	private int maxGivens; // most givens a puzzle of the level may have
+	private boolean exceedTimeLim;
 	
 	/**
-	 * Returns a valid Sudoku puzzle satisfying the desired difficulty requirements.
+	 * Create a digger for a seed puzzle. It is meant to be used by a single thread.
 	 * 
-	 * @param grid  A fully-solved puzzle, i.e., a terminal pattern from {@link TerminalPattern}.
 	 * @param level  From 1 to 5, corresponding to those described in the aforementioned article.
-	 * @return A valid Sudoku puzzle as a 2D array, if the process finished under the desired limit. 
-	 * Else, return a partially-dug grid with a "-1" in the 00-coordinate, indicating the Main method 
-	 * that this attempt has failed.
+	 * @param solver  Engine used to check the uniqueness of the solution after digging each cell.
+	 * @param random  Generator of the seed puzzle (see {@link RandomStreams}), used for the digging order and the bounds on the givens.
+	 */
+	
+	GeneratingAlgorithm(int level, Solver solver, SplittableRandom random) {
+		
+		this.level = level;
+		this.solver = solver;
+		this.random = random;
+		this.session = solver instanceof BacktrackingAlgorithm ? new DigSession((BacktrackingAlgorithm) solver) : null;
+	}
+	
+	/**
+	 * Returns a valid Sudoku puzzle satisfying the desired difficulty requirements. If the search budget runs out,
+	 * the puzzle dug so far is kept as a checkpoint and the digging goes on from it, with a new order and a new
+	 * budget, up to {@code MAX_RESUMES} times. Cells that could not be dug are not tried again, since removing
+	 * more givens can only add solutions.
+	 * 
+	 * @param grid  A fully-solved puzzle, i.e., a terminal pattern from {@link TerminalPattern}. It is dug in place.
+	 * @return The dug puzzle, which always has a unique solution, and whether it meets the requirements of the level
+	 * (see {@link DigResult.Status}).
 	 */
 
-	static int[][] generatePuzzle(int[][] grid, int level) {
+	DigResult generatePuzzle(int[][] grid) {
 		
-		final long START_TIME = System.currentTimeMillis(); // start timer
-		exceedTimeLim = false;
+		if (session != null) {
+			session.start(grid);
+		}
 		
-		int[][] diggingPattern = generateDiggingPattern(level); // Obtain digging sequence as a list of 81 coordinates
-		restrictOnGivens(level); // Obtain relevant difficulty requirements
+		int[][] diggingPattern = generateDiggingPattern(level, random); // Obtain digging sequence as a list of 81 coordinates
+		restrictOnGivens(); // Obtain relevant difficulty requirements
 		// Keep track of how many givens there are per row and column
 		int[] rowGivens = {9,9,9,9,9,9,9,9,9};
 		int[] colGivens = {9,9,9,9,9,9,9,9,9};
+		boolean[] settled = new boolean[81]; // givens that can no longer be dug
 		
 		int dugCells = 0;
-		int indx = 0;
-		while (dugCells < 81-totalBound && indx <= 80 && !exceedTimeLim) {
-
-			int[] nextCell = diggingPattern[indx];
-			int r = nextCell[0];
-			int c = nextCell[1];
+		int resumes = 0;
+		long nodes = 0;
+		while (true) {
 			
-			// Check if digging this cell would result in a harder puzzle than desired
-			boolean violatesRestriction = (rowGivens[r]-1 < rowcolBound) || (colGivens[c]-1 < rowcolBound); 
+			SearchBudget budget = new SearchBudget(PUZZLE_NODE_LIM, PUZZLE_TIME_LIM); // shared by all uniqueness checks
+			exceedTimeLim = false;
 			
-			if (!violatesRestriction) {
+			int indx = 0;
+			while (dugCells < 81-totalBound && indx <= 80 && !exceedTimeLim) {
+	
+				int[] nextCell = diggingPattern[indx];
+				int r = nextCell[0];
+				int c = nextCell[1];
 				
-				// Computationally longest step: check if digging the cell at {r,c} would still yield a unique solution
-				boolean canBeDug = checkUniqueness(grid, r, c, START_TIME);
+				// Check if digging this cell would result in a harder puzzle than desired
+				boolean violatesRestriction = (rowGivens[r]-1 < rowcolBound) || (colGivens[c]-1 < rowcolBound); 
 				
-				// If so, dig the cell. Else, move on to the next one.
-				if (canBeDug) {
-					grid[r][c] = 0;
-					rowGivens[r]--;
-					colGivens[c]--;
-					dugCells++;
+				if (grid[r][c] != 0 && !settled[r*9+c] && !violatesRestriction) {
+					
+					// Computationally longest step: check if digging the cell at {r,c} would still yield a unique solution
+					boolean canBeDug = checkUniqueness(grid, r, c, budget);
+					
+					// If so, dig the cell. Else, move on to the next one.
+					if (canBeDug) {
+						grid[r][c] = 0;
+						rowGivens[r]--;
+						colGivens[c]--;
+						dugCells++;
+					} else if (!exceedTimeLim) {
+						settled[r*9+c] = true;
+					}
 				}
+				indx++;
 			}
-			indx++;
-			long currentTime = System.currentTimeMillis();
-			exceedTimeLim = (currentTime-START_TIME) >= PUZZLE_TIME_LIM; // Check if time limit has been exceeded
-		}
-		
-		if (exceedTimeLim) {
-			grid[0][0] = -1; // Notifies Main that a Puzzle could not be generated in the desired time
+			nodes += budget.getNodes();
+			
+			if (!exceedTimeLim) {
+				return new DigResult(DigResult.Status.COMPLETE, grid, resumes, nodes);
+			}
+			if (resumes == MAX_RESUMES) {
+				DigResult.Status status = 81-dugCells <= maxGivens ? DigResult.Status.PARTIAL : DigResult.Status.FAILED;
+				return new DigResult(status, grid, resumes, nodes);
+			}
+			
+			// Resume from the checkpoint, i.e., the grid as it is, in a new order
+			resumes++;
+			diggingPattern = generateDiggingPattern(level, random);
 		}
-		
-		return grid;
 	}
 
 	/* OPERATOR 1 */
@@ -84,10 +130,11 @@ class GeneratingAlgorithm {
 	 * Given a difficulty level, it returns the order in which cells are to be scanned.
 	 * 
 	 * @param level  From 1 (easiest) to 5 (hardest)
+	 * @param random  Source of the random order.
 	 * @return An array of 81 sets of {row,col}-coordinates in the corresponding order.
 	 */
 	
-	private static int[][] generateDiggingPattern(int level) {
+	private static int[][] generateDiggingPattern(int level, SplittableRandom random) {
 		
 		int[][] diggingPattern = new int[81][2];
 		
@@ -99,7 +146,7 @@ class GeneratingAlgorithm {
 		 */
 		
 		diggingPattern = fillLeftRightTopBottom(diggingPattern);
-		shufflePattern(diggingPattern);
+		shufflePattern(diggingPattern, random);
 		
 		return diggingPattern;
 	}
@@ -126,11 +173,10 @@ class GeneratingAlgorithm {
 	 * Randomly shuffle an array corresponding to an ordered search pattern.
 	 * 
 	 * @param An array containing coordinates of the grid.
+	 * @param random  Source of the random order.
 	 */
 	
-	private static void shufflePattern(int[][] array) {
-		
-		Random random = new Random();
+	private static void shufflePattern(int[][] array, SplittableRandom random) {
 		
 		for (int i = array.length - 1; i > 0; i--) {
 			int m = random.nextInt(i + 1);
@@ -146,14 +192,14 @@ class GeneratingAlgorithm {
 	/**
 	 * Modifies fields {@code totalBound}, indicating the maximum number of total 
 	 * givens, and {@code rowcolBound}, denoting the maximum number of givens per
-	 * row and column.
+	 * row and column, as well as {@code maxGivens}, the upper end of the range of
+	 * total givens of the level.
 	 * 
-	 * @param level  Level of difficulty from 1 (easiest) to 5 (hardest).
+	 * The level of difficulty of this digger (from 1, easiest, to 5, hardest) is used.
 	 */
 	
-	private static void restrictOnGivens(int level) {
+	private void restrictOnGivens() {
 		
-		Random random = new Random();
 		int totalMin;
 		int totalMax;
 		
@@ -164,30 +210,35 @@ class GeneratingAlgorithm {
 				totalMin = 50;
 				totalMax = 65;
 				totalBound = random.nextInt(totalMax - totalMin) + totalMin;
+				maxGivens = totalMax;
 				rowcolBound = 5;
 				break;
 			case 2:
 				totalMin = 36;
 				totalMax = 49;
 				totalBound = random.nextInt(totalMax+1 - totalMin) + totalMin;
+				maxGivens = totalMax;
 				rowcolBound = 4;
 				break;
 			case 3:
 				totalMin = 32;
 				totalMax = 35;
 				totalBound = random.nextInt(totalMax+1 - totalMin) + totalMin;
+				maxGivens = totalMax;
 				rowcolBound = 3;
 				break;
 			case 4:
 				totalMin = 28;
 				totalMax = 31;
 				totalBound = random.nextInt(totalMax+1 - totalMin) + totalMin;
+				maxGivens = totalMax;
 				rowcolBound = 2;
 				break;
 			case 5:
 				totalMin = 22;
 				totalMax = 27;
 				totalBound = random.nextInt(totalMax+1 - totalMin) + totalMin;
+				maxGivens = totalMax;
 				rowcolBound = 0;
 				break;
 		}
@@ -196,48 +247,42 @@ class GeneratingAlgorithm {
 	/* OPERATOR 3 & 4 */
 	
 	/**
-	 * Check whether a given grid still has a unique solution after substituting the
-	 * number in a cell for any other potential candidates. If so, the cell at said
-	 * coordinates cannot be dug (i.e., would not yield a unique solution).
+	 * Check whether a given grid still has a unique solution after digging the cell at the
+	 * given coordinates. This takes a single search that stops as soon as a second solution
+	 * is found, instead of trying to solve the grid with each of the other 8 candidates in said cell.
+	 * With the backtracking engine, the check is made incrementally by the {@link DigSession} instead,
+	 * which skips the search altogether when the number is forced in the cell.
 	 * 
 	 * @param currentGrid  The Sudoku grid to be checked, with the original number still in place.
 	 * @param r  Row coordinate of the cell under scrutiny
 	 * @param c  Column coordinate of the cell under scrutiny
-	 * @param START_TIME  Time at which {@code generatePuzzle()} was called.
+	 * @param budget  Search budget shared by all the checks made by {@code generatePuzzle()}.
 	 * @return A boolean indicating whether the cell at the given coordinates can be dug
 	 * to yield a uniquely solvable puzzle.
 	 */
 	
-	private static boolean checkUniqueness(int[][] currentGrid, int r, int c, long START_TIME) {
+	private boolean checkUniqueness(int[][] currentGrid, int r, int c, SearchBudget budget) {
+		
+		if (session != null) {
+			int dug = session.tryDig(r, c, budget); // The session keeps its own copy of the grid up to date
+			if (dug == -1) {
+				exceedTimeLim = true;
+			}
+			return dug == 1;
+		}
 		
 		int currentNum = currentGrid[r][c]; // Current number in place
-		boolean solutionFound = false;
-		int trialNum = 1;
-		int[][] gridCopy = deepCopy(currentGrid); // Deep-copy to leave original grid unchanged.
 		
-		/* Attempt to solve the same puzzle after substituting currentNum by any other potential candidate */
+		/* Count the solutions of the puzzle with the cell dug; the original number is restored afterwards */
 		
-		while (trialNum <= 9 && !exceedTimeLim) {
-			
-			if (trialNum != currentNum) {
-				gridCopy[r][c] = trialNum;
-				
-				long currentTime = System.currentTimeMillis();
-				long timeLim = PUZZLE_TIME_LIM - (currentTime - START_TIME);
-				
-				if (timeLim > 0) {
-					solutionFound = BacktrackingAlgorithm.gridSolver(gridCopy, timeLim);
-				} else {
-					exceedTimeLim = true;
-				}
-				
-				if (solutionFound) {
-					break;
-				}
-			}
-			trialNum++;
+		currentGrid[r][c] = 0;
+		int solutionsFound = solver.countSolutions(currentGrid, 2, budget);
+		currentGrid[r][c] = currentNum;
+		
+		if (solutionsFound == -1) {
+			exceedTimeLim = true;
 		}
-		return !solutionFound;
+		return solutionsFound == 1;
 	}
 	
 	/**
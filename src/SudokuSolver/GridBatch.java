@@ -0,0 +1,159 @@
+package SudokuSolver;
+
+/**
+ * A batch of 9x9 grids stored cell by cell ("structure of arrays"): the entry {@code cell*capacity + g}
+ * holds the number in that cell of the g-th grid as a bit (bit n-1 for the number n, or 0 if empty).
+ * With this layout, the same cell of consecutive grids is contiguous in memory, so the checks on rows,
+ * columns and blocks become lane-parallel bitwise ORs over many grids at once.
+ * <p>
+ * If the {@code jdk.incubator.vector} module is available (e.g., when run with
+ * {@code --add-modules jdk.incubator.vector}), the checks use the SIMD kernels of {@link VectorBatchKernel};
+ * otherwise, or if {@code -Dsudoku.scalarKernel=true} is set, the scalar kernels below give identical results.
+ *
+ * @author Nicols Moro
+ */
+
+class GridBatch {
+	
+	static final boolean VECTORIZED = !Boolean.getBoolean("sudoku.scalarKernel")
+			&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+			
+	final int capacity;
+	final int[] bits;
+	int size = 0;
+	
+	// Scratch space of the kernels: the numbers used in each of the 27 units of every grid
+	final int[] unitMasks;
+	
+	/**
+	 * @param capacity  Maximum number of grids in the batch.
+	 */
+	
+	GridBatch(int capacity) {
+		
+		this.capacity = capacity;
+		this.bits = new int[81*capacity];
+		this.unitMasks = new int[27*capacity];
+	}
+	
+	/**
+	 * Empty the batch so that it can be filled again.
+	 */
+	
+	void clear() {
+		
+		size = 0;
+	}
+	
+	/**
+	 * Append a grid to the batch.
+	 *
+	 * @param grid  A 2D (9x9) grid. Empty cells are filled by 0.
+	 * @return The index of the grid within the batch.
+	 */
+	
+	int add(int[][] grid) {
+		
+		int g = size++;
+		for (int cell=0; cell<81; cell++) {
+			int num = grid[BoardState.ROW_OF[cell]][BoardState.COL_OF[cell]];
+			bits[cell*capacity + g] = num == 0 ? 0 : 1 << (num-1);
+		}
+		return g;
+	}
+	
+	/**
+	 * Determine which grids of the batch follow the rules of Sudoku, i.e., have no repeated number in any unit.
+	 * Empty cells are allowed.
+	 *
+	 * @param valid  Array of at least {@code size} entries, overwritten with the result for each grid.
+	 */
+	
+	void validate(boolean[] valid) {
+		
+		int start = VECTORIZED ? VectorBatchKernel.validate(this, valid) : 0;
+		validateScalar(start, valid);
+	}
+	
+	/**
+	 * Determine the candidates of every cell of every grid in the batch.
+	 *
+	 * @param candidates  Array of at least {@code 81*capacity} entries, overwritten with the 9-bit candidate
+	 * mask of each cell in the same layout as {@code bits} (0 for filled cells).
+	 */
+	
+	void computeCandidates(int[] candidates) {
+		
+		int start = VECTORIZED ? VectorBatchKernel.computeCandidates(this, candidates) : 0;
+		computeCandidatesScalar(start, candidates);
+	}
+	
+	/**
+	 * @param candidates  Candidate masks of the batch, as computed by {@link #computeCandidates}.
+	 * @param g  Index of a grid within the batch.
+	 * @return True if an empty cell of the grid has no candidate left, so that the grid cannot be completed.
+	 */
+	
+	boolean hasDeadCell(int[] candidates, int g) {
+		
+		for (int cell=0; cell<81; cell++) {
+			if (bits[cell*capacity + g] == 0 && candidates[cell*capacity + g] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Scalar kernel of {@link #validate}, applied to the grids from {@code start} to the end of the batch.
+	 *
+	 * @param start  Index of the first grid to be checked.
+	 * @param valid  Array overwritten with the result for each grid.
+	 */
+	
+	void validateScalar(int start, boolean[] valid) {
+		
+		for (int g=start; g<size; g++) {
+			int conflicts = 0;
+			for (int[] unit : BoardState.UNITS) {
+				int seen = 0;
+				for (int cell : unit) {
+					int bit = bits[cell*capacity + g];
+					conflicts |= seen & bit;
+					seen |= bit;
+				}
+			}
+			valid[g] = conflicts == 0;
+		}
+	}
+	
+	/**
+	 * Scalar kernel of {@link #computeCandidates}, applied to the grids from {@code start} to the end of the batch.
+	 *
+	 * @param start  Index of the first grid.
+	 * @param candidates  Array overwritten with the candidate masks.
+	 */
+	
+	void computeCandidatesScalar(int start, int[] candidates) {
+		
+		for (int unit=0; unit<27; unit++) {
+			for (int g=start; g<size; g++) {
+				int used = 0;
+				for (int cell : BoardState.UNITS[unit]) {
+					used |= bits[cell*capacity + g];
+				}
+				unitMasks[unit*capacity + g] = used;
+			}
+		}
+		
+		for (int cell=0; cell<81; cell++) {
+			int row = BoardState.ROW_OF[cell]*capacity;
+			int col = (9+BoardState.COL_OF[cell])*capacity;
+			int block = (18+BoardState.BLOCK_OF[cell])*capacity;
+			for (int g=start; g<size; g++) {
+				int used = unitMasks[row+g] | unitMasks[col+g] | unitMasks[block+g];
+				candidates[cell*capacity + g] = bits[cell*capacity + g] != 0 ? 0 : ~used & BoardState.ALL_DIGITS;
+			}
+		}
+	}
+}
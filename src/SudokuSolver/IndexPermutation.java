@@ -0,0 +1,84 @@
+package SudokuSolver;
+
+import java.util.SplittableRandom;
+
+/**
+ * A pseudorandom permutation of the indices from 0 to {@code high*low-1}, so that the copies of a seed can be
+ * drawn in a random order without repeats and without keeping track of the ones already drawn. Each index is
+ * split into its two digits in the mixed radix {@code (high, low)}, e.g., the geometry and the relabeling of
+ * a {@link PuzzleTransform}, and these go through a Feistel network in which the rounds alternate: each one
+ * adds a keyed hash of one digit (the SplitMix64 finalizer) to the other digit, modulo its radix. Every round
+ * can be undone, so the network is a bijection of the whole range, and unlike a binary Feistel network over
+ * the next power of 2, it never lands outside the range, so no cycle-walking is needed.
+ *
+ * @author Nicols Moro
+ */
+
+class IndexPermutation {
+	
+	private static final int ROUNDS = 6; // each digit is changed 3 times
+	
+	private final int high;
+	private final int low;
+	private final long[] keys = new long[ROUNDS];
+	
+	/**
+	 * @param high  Radix of the high digit of the indices, at least 1.
+	 * @param low  Radix of the low digit of the indices, at least 1.
+	 * @param random  Generator of the round keys.
+	 * @throws IllegalArgumentException if a radix is not positive.
+	 */
+	
+	IndexPermutation(int high, int low, SplittableRandom random) {
+		
+		if (high < 1 || low < 1) {
+			throw new IllegalArgumentException("Radices of the permutation out of range: "+high+" x "+low);
+		}
+		this.high = high;
+		this.low = low;
+		for (int i=0; i<ROUNDS; i++) {
+			keys[i] = random.nextLong();
+		}
+	}
+	
+	/**
+	 * @param position  Position in the permuted order, from 0 to {@code size()-1}.
+	 * @return The index at that position, from 0 to {@code size()-1}.
+	 */
+	
+	long get(long position) {
+		
+		int left = (int) (position / low);
+		int right = (int) (position % low);
+		for (int i=0; i<ROUNDS; i+=2) {
+			right = addModulo(right, hash(left, keys[i], low), low);
+			left = addModulo(left, hash(right, keys[i+1], high), high);
+		}
+		return (long) left*low + right;
+	}
+	
+	/**
+	 * @return Number of indices permuted.
+	 */
+	
+	long size() {
+		
+		return (long) high*low;
+	}
+	
+	/**
+	 * @return A keyed hash of a digit, from 0 to {@code radix-1}; the top 32 bits of the hash are scaled to the
+	 * radix with a multiplication instead of a division.
+	 */
+	
+	private static int hash(int digit, long key, int radix) {
+		
+		return (int) (((RandomStreams.mix(digit ^ key) >>> 32) * radix) >>> 32);
+	}
+	
+	private static int addModulo(int a, int b, int radix) {
+		
+		int sum = a + b; // both below radix, so no overflow past 2^31
+		return sum >= radix ? sum-radix : sum;
+	}
+}
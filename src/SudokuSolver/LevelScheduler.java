@@ -0,0 +1,166 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+
+/**
+ * Decides which level each worker digs next, so that all the levels finish together even though their seeds
+ * take very different times (microseconds at level 1, up to the whole search budget at level 5). For that,
+ * each level needs a share of the workers proportional to its target times the cost of its seeds, which
+ * amounts to keeping every level at the same fraction of its target: each worker takes its next seed from the
+ * level furthest behind. Slow levels thus end up holding more workers, since their seeds keep them busy for
+ * longer. With a deadline, no more seeds are handed out once it has passed, and the levels are left equally
+ * far from their targets.
+ * <p>
+ * The cost of the seeds of each level is measured as they are dug, and reported together with the observed
+ * rate, the average number of workers on the level and the estimated time left (see {@link #progress()}).
+ * <p>
+ * The target of each level and the deadline can be set from the command line, e.g.
+ * {@code -Dsudoku.seedTargets=10,10,20,20,40 -Dsudoku.deadline=600} (in seconds; 0 for no deadline).
+ *
+ * @author Nicols Moro
+ */
+
+class LevelScheduler {
+	
+	static final long DEADLINE = Long.getLong("sudoku.deadline", 0); // seconds from the start of the run
+	
+	private final int levels;
+	private final int[] targets; // seeds to be dug per level (1 to levels)
+	private final int[] claimed;
+	private final int[] inFlight;
+	private final int[] done;
+	private final long[] digNanos; // time spent on the seeds done, summed over the workers
+	private final long startTime = System.nanoTime();
+	private final long deadline;
+	private final boolean hasDeadline;
+	
+	/**
+	 * @param targets  Number of seeds to be dug per level, from level 1 on.
+	 * @param timeLimit  Maximum time in nanoseconds from now to hand out seeds. If set to 0, there is no deadline.
+	 */
+	
+	LevelScheduler(int[] targets, long timeLimit) {
+		
+		this.levels = targets.length;
+		this.targets = new int[levels+1];
+		System.arraycopy(targets, 0, this.targets, 1, levels);
+		this.claimed = new int[levels+1];
+		this.inFlight = new int[levels+1];
+		this.done = new int[levels+1];
+		this.digNanos = new long[levels+1];
+		this.hasDeadline = timeLimit > 0;
+		this.deadline = startTime + timeLimit;
+	}
+	
+	/**
+	 * Reads the target of each level from a system property, given as a comma-separated list.
+	 *
+	 * @param property  Name of the system property.
+	 * @param levels  Number of levels.
+	 * @param defaultTarget  Target of every level if the property is not set.
+	 * @return The target of each level, from level 1 on.
+	 * @throws IllegalArgumentException if the property does not have one non-negative number per level.
+	 */
+	
+	static int[] targetsFromProperty(String property, int levels, int defaultTarget) {
+		
+		int[] targets = new int[levels];
+		String value = System.getProperty(property);
+		if (value == null) {
+			Arrays.fill(targets, defaultTarget);
+			return targets;
+		}
+		String[] fields = value.split(",");
+		if (fields.length != levels) {
+			throw new IllegalArgumentException(property+" must have "+levels+" targets, one per level: "+value);
+		}
+		for (int i=0; i<levels; i++) {
+			targets[i] = Integer.parseInt(fields[i].trim());
+			if (targets[i] < 0) {
+				throw new IllegalArgumentException(property+" has a negative target: "+value);
+			}
+		}
+		return targets;
+	}
+	
+	/**
+	 * Claim the next seed to be dug by the calling worker.
+	 *
+	 * @return The level of the seed, or 0 if every seed has been claimed or the deadline has passed.
+	 */
+	
+	synchronized int nextLevel() {
+		
+		if (hasDeadline && System.nanoTime()-deadline >= 0) {
+			return 0;
+		}
+		
+		// The level furthest behind, as a fraction of its target
+		int chosen = 0;
+		double lowest = 1;
+		for (int level=1; level<=levels; level++) {
+			if (claimed[level] < targets[level]) {
+				double fraction = (double) claimed[level]/targets[level];
+				if (fraction < lowest) {
+					lowest = fraction;
+					chosen = level;
+				}
+			}
+		}
+		if (chosen != 0) {
+			claimed[chosen]++;
+			inFlight[chosen]++;
+		}
+		return chosen;
+	}
+	
+	/**
+	 * Record a seed as dug.
+	 *
+	 * @param level  Level of the seed, as given by {@link #nextLevel()}.
+	 * @param nanos  Time spent on it by the worker.
+	 */
+	
+	synchronized void finished(int level, long nanos) {
+		
+		inFlight[level]--;
+		done[level]++;
+		digNanos[level] += nanos;
+	}
+	
+	/**
+	 * Release a seed whose worker failed to dig it; it is not counted as dug.
+	 *
+	 * @param level  Level of the seed, as given by {@link #nextLevel()}.
+	 */
+	
+	synchronized void failed(int level) {
+		
+		inFlight[level]--;
+	}
+	
+	/**
+	 * @return One line per level with the seeds dug so far, the observed rate, the cost of a seed, the average
+	 * number of workers busy with the level and the estimated time left.
+	 */
+	
+	synchronized String progress() {
+		
+		double elapsed = (System.nanoTime()-startTime)/1e9;
+		StringBuilder lines = new StringBuilder();
+		for (int level=1; level<=levels; level++) {
+			lines.append("Level "+level+": "+done[level]+"/"+targets[level]+" seeds");
+			if (done[level] == targets[level]) {
+				lines.append(", done");
+			} else if (done[level] > 0) {
+				double rate = done[level]/elapsed;
+				lines.append(String.format(", %.1f seeds/s, %.1f ms per seed, %.1f workers, ETA %.0f s", rate,
+						digNanos[level]/1e6/done[level], digNanos[level]/1e9/elapsed, (targets[level]-done[level])/rate));
+			}
+			if (level < levels) {
+				lines.append("\n");
+			}
+		}
+		return lines.toString();
+	}
+}
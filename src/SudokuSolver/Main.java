@@ -1,11 +1,9 @@
 package SudokuSolver;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
-import java.util.Random;
 
 /**
  * This class is able to generate hundreds of thousands of combinations of distinct
@@ -13,6 +11,7 @@ import java.util.Random;
  * in a dedicated SQL database. These can later be used to build software or mobile
  * Sudoku games and can be imported to be used in any multi-purpose programming language
  * since both the puzzles and their solutions are encoded as strings in the database.
+ * They can also be written to compressed or binary files, or to an embedded database (see {@link SinkType}).
  * The fields {@code SEED_PUZZLES} and {@code maxPuzzles} can be adjusted to fit the
  * user's needs and their PC's performance when generating the puzzles.
  * 
@@ -22,52 +21,62 @@ import java.util.Random;
 class Main{
 	
 	// Determine number of puzzles to be created per difficulty level
-	private final static long SEED_PUZZLES = 10; // number of generated seed puzzles
-	private static long maxPuzzles = 1000; // maximum number of generated puzzles: up to 26,127,360
-	private static int lvl; // level of difficulty
+	private final static int SEED_PUZZLES = 10; // number of generated seed puzzles per level, unless set with -Dsudoku.seedTargets (see LevelScheduler)
+	private static long maxPuzzles = 1000; // maximum number of generated puzzles per seed: up to 1,218,998,108,160 (see PuzzleTransform)
 	
-	private static int countPuzzles; // per pattern
-	private static int totalCount; // per difficulty level
-	private static boolean maxReached; // stop the program
+	private static long totalCount; // over all levels
+	private final static boolean SAMPLE_COPIES = !"ordered".equals(System.getProperty("sudoku.copyOrder")); // random copies of each seed, unless set to "ordered" (see SeedPropagator)
+	private final static long REPORT_INTERVAL = 5_000_000_000L; // nanoseconds between two progress reports
 	
-	private static int[][] grid; // store puzzle
-	private static int[][] solvedGrid; // store solution
-	private static Connection conn = null;
-	private static PreparedStatement st;
+	// Solver engines used to check uniqueness while digging and to verify stored puzzles (see SolverEngine)
+	private final static SolverEngine DIG_ENGINE = SolverEngine.fromProperty("sudoku.digSolver", SolverEngine.BACKTRACKING);
+	private final static SolverEngine VERIFY_ENGINE = SolverEngine.fromProperty("sudoku.verifySolver", SolverEngine.BACKTRACKING);
 	
-	private static Random r = new Random();
-	private static String rating; // random initial rating for each puzzle
+	private static PuzzleSink sink; // PostgreSQL database, unless set with -Dsudoku.sink (see SinkType)
+	private static SeedPropagator propagator;
 	private static final DecimalFormat DF = new DecimalFormat("0.00");
 	
 	/**
 	 * Generate the desired number of puzzles and store them in the database.
 	 * 
-	 * @param args  The command line arguments.
+	 * @param args  The command line arguments. If the first one is "verify", the puzzles already stored
+	 * in the database are verified instead (see {@link PuzzleVerifier}); if it is "minimal", minimal puzzles
+	 * are mined instead of the puzzles of the 5 levels (see {@link MinimalPuzzleMiner}).
 	 * @throws SQLException when connection to the database fails or the database already exists.
 	 * @throws ClassNotFoundException when failed to set up driver.
+	 * @throws IOException when the index of used seeds or the verification report cannot be read or written, or the puzzles cannot be stored.
+	 * @throws InterruptedException if interrupted while waiting for the seeds to be generated or the puzzles to be verified.
 	 */
 	
-	public static void main(String[] args) throws SQLException, ClassNotFoundException {
+	public static void main(String[] args) throws SQLException, ClassNotFoundException, IOException, InterruptedException {
 		
-		// Create dedicated DB to store all the puzzles and their solutions
-		DatabaseManagement.createDB();
-		
-		long startTime = System.currentTimeMillis();
-		System.out.println("Generating Sudoku puzzles and storing them in the Database...\n");
-		boolean generatedOnTime;
-		
-		// Setting up new connection to store puzzles
-		try {
+		if (args.length > 0 && args[0].equals("verify")) {
 			Class.forName(DatabaseManagement.DRIVER);
-			conn = DriverManager.getConnection(DatabaseManagement.NEW_DB_URL, DatabaseManagement.USER, DatabaseManagement.PASS);
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		} catch (SQLException e) {
-			e.printStackTrace();
+			PuzzleVerifier.verifyDB(VERIFY_ENGINE, Runtime.getRuntime().availableProcessors());
+			return;
+		}
+		
+		// Open the destination of the puzzles: the dedicated DB by default, or a local file or embedded DB
+		boolean minimal = args.length > 0 && args[0].equals("minimal");
+		sink = SinkType.fromProperty("sudoku.sink", SinkType.POSTGRES).open(System.getProperty("sudoku.sinkPath"), minimal ? "minimal" : "puzzles");
+		if (minimal) {
+			try {
+				MinimalPuzzleMiner.minePuzzles(sink, MinimalPuzzleMiner.PATTERNS, SeedGenerator.DIG_THREADS, RandomStreams.RUN_SEED,
+						LevelScheduler.DEADLINE*1_000_000_000L);
+			} catch (IOException | InterruptedException | RuntimeException e) {
+				closeAfterFailure(e);
+				throw e;
+			}
+			sink.close();
+			System.out.println(sink);
+			return;
 		}
 		
-		// Check maxReached input and correct it if necessary (there are only so many puzzles each seed can generate)
-		final long MAX_PROPAGATIONS = 4*3*6*factorial(9);
+		long startTime = System.currentTimeMillis();
+		System.out.println("Generating Sudoku puzzles and storing them...\n");
+		
+		// Check maxPuzzles input and correct it if necessary (there are only so many puzzles each seed can generate)
+		final long MAX_PROPAGATIONS = PuzzleTransform.GROUP_SIZE;
 		if (maxPuzzles == 0) {
 			System.out.println("Note: maximum number of puzzles per seed is being generated; this may take a while...");
 			maxPuzzles = MAX_PROPAGATIONS;
@@ -76,273 +85,100 @@ class Main{
 			maxPuzzles = MAX_PROPAGATIONS;
 		}
 		
-		// Iterate through all difficulty levels
-		for(lvl=1; lvl<=5; lvl++) {
-			System.out.println("\nLevel "+lvl+" puzzles: \n");
-			totalCount = 0;
-			for (int seed=1; seed<=SEED_PUZZLES; seed++) {
-				
-				countPuzzles = 0; // reset counter
-				maxReached = false;
-				
-				/* Retry generating seed puzzle if previous attempt went over time. */
+		// All the randomness of the run is derived from a single seed (see RandomStreams)
+		System.out.println("Run seed: "+RandomStreams.RUN_SEED+" (set -Dsudoku.runSeed="+RandomStreams.RUN_SEED+" to reproduce this run)");
+		
+		// Seeds to be dug per level; the scheduler gives more workers to the slow levels so that all of them finish together
+		int[] targets = LevelScheduler.targetsFromProperty("sudoku.seedTargets", 5, SEED_PUZZLES);
+		LevelScheduler scheduler = new LevelScheduler(targets, LevelScheduler.DEADLINE*1_000_000_000L);
+		
+		// Start producing terminal patterns in the background
+		PatternPool patternPool = new PatternPool(PatternPool.PRODUCER_THREADS, PatternPool.CAPACITY, RandomStreams.RUN_SEED, targets);
+		
+		// Seeds used in previous runs, to avoid generating the same families of puzzles again (except those of a run with the same seed)
+		SeedIndex seedIndex = new SeedIndex(SeedIndex.INDEX_FILE, RandomStreams.RUN_SEED);
+		
+		// Dig and grade the seeds of all levels in parallel; this thread propagates and stores them as they come
+		SeedGenerator generator = new SeedGenerator(patternPool, scheduler, seedIndex, DIG_ENGINE, SeedGenerator.DIG_THREADS);
+		System.out.println("Digging seeds with "+SeedGenerator.DIG_THREADS+" threads");
+		
+		propagator = new SeedPropagator();
+		SeedGenerator.Seed seed;
+		long lastReport = System.nanoTime();
+		try {
+			while ((seed = generator.take()) != null) {
 				
-				generatedOnTime = false;
-				while (!generatedOnTime) {
-					
-					// Create a terminal pattern using a Las Vegas algorithm for n givens
-					solvedGrid = TerminalPattern.createPattern();
-					
-					// create deepCopy to input in PuzzleGenerator
-					grid = GeneratingAlgorithm.deepCopy(solvedGrid);
-					// Generate a puzzle of the desired level of difficulty
-					grid = GeneratingAlgorithm.generatePuzzle(grid, lvl);
-					
-					if (grid[0][0] != -1) {
-						generatedOnTime = true;
-					}
-					
+				if (System.nanoTime()-lastReport >= REPORT_INTERVAL) {
+					System.out.println("\n"+scheduler.progress());
+					lastReport = System.nanoTime();
 				}
+				sink.startSeed(seed, DF.format(seed.rating)); // the rating is shared by all the propagated copies
 				
-				// Propagate --> Store all copies in an external database in a suitable format
-				// x4 combinations
-				for (int rot=1; rot<=4 && !maxReached; rot++) {
-					grid = rotateClockwise(grid);
-					solvedGrid = rotateClockwise(solvedGrid);
-					
-					// x3 combinations
-					for (int block=0; block<=2 && !maxReached; block++) {
-						// x6 combinations
-						for (int i=0; i<=1; i++) {
-							// Swap second and third columns
-							grid = swapColumns(grid, block, 1, 2);
-							solvedGrid = swapColumns(solvedGrid, block, 1, 2);
-							for (int j=0; j<=2 && !maxReached; j++) {
-								
-								// Move each column to the right
-								grid = swapColumns(grid, block, 0, 2);
-								grid = swapColumns(grid, block, 1, 2);
-								solvedGrid = swapColumns(solvedGrid, block, 0, 2);
-								solvedGrid = swapColumns(solvedGrid, block, 1, 2);
-								
-								// Convert each propagated puzzle to String and store it in a dedicated DB
-								exchangeDigitsAndStore(grid, solvedGrid, 1); //x(9!) combinations
-							}
-						}
+				// Propagate --> Store the copies of the seed in the sink, sampled from its whole family or 9! per geometry
+				propagator.start(seed.puzzle, seed.solution);
+				long stored;
+				if (SAMPLE_COPIES) {
+					IndexPermutation order = new IndexPermutation(PuzzleTransform.GEOMETRIES, PuzzleTransform.RELABELINGS, RandomStreams.forCopies(RandomStreams.RUN_SEED, seed.level, seed.index));
+					stored = propagator.emitSampled(maxPuzzles, order, Main::store);
+				} else {
+					stored = propagator.emit(maxPuzzles, Main::store);
+					for (int geometry=1; geometry<PuzzleTransform.GEOMETRIES && stored < maxPuzzles; geometry++) {
+						propagator.setGeometry(geometry);
+						stored += propagator.emit(maxPuzzles-stored, Main::store);
 					}
 				}
+				totalCount += stored;
 			}
+			patternPool.close(); // fails if a producer has failed
+		} catch (UncheckedIOException e) {
+			closeAfterFailure(e.getCause());
+			throw e.getCause();
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			closeAfterFailure(e);
+			throw e;
 		}
-				
-		try {
-			conn.close();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		sink.close();
+		System.out.println("\n"+scheduler.progress());
+		System.out.println(patternPool);
+		System.out.println(generator);
+		System.out.println(sink);
+		seedIndex.save();
+		System.out.println("Seed index: "+seedIndex.size()+" seeds saved to "+SeedIndex.INDEX_FILE+".");
 		long endTime = System.currentTimeMillis();
-		System.out.println("Finished in "+(endTime-startTime)+" ms. "+5*SEED_PUZZLES*maxPuzzles+" puzzles generated and stored in the database.");
-	}
-	
-	/* OPERATOR 5 */
-	
-	private final static int[] SUDOKU_NUMS = {1,2,3,4,5,6,7,8,9}; // Used as the default order of Sudoku symbols (i.e., numbers)
-	private static int[][] newSol;
-	private static int[][] newPuzzle;
-	// To be stored in the database for each new puzzle
-	private static String stringPuzzle;
-	private static String stringSol;
-	
-	/*
-	 * Different propagation methods described in the literature
-	 * (excl. swapping blocks of columns; deemed unnecessary).
-	 */
-	
-	/**
-	 * Recursively generates up to 9! permutations off the same puzzle 
-	 * by interchanging the order of the grid's digits. For instance, if
-	 * the digits of a puzzle are displayed with respect to
-	 * {1,2,3,4,5,6,7,8,9}, interchanging 1 and 2 and then 2 and 9 produces
-	 * {9,1,3,4,5,6,7,8,2}, which displays a different puzzle.
-	 * <p>
-	 * The program stops either when all 9! puzzles have been generated or
-	 * when the desired number of distinct puzzles has been reached. Afterwards,
-	 * this method also takes care of storing all the generated puzzles in the DB.
-	 * 
-	 * @param grid  Propagated, original puzzle as a 2D array.
-	 * @param solution  Original terminal pattern as a 2D array.
-	 * @param currentDigit  Used for recursion.
-	 * @throws SQLException when connection to the database fails.
-	 */
-	
-	private static void exchangeDigitsAndStore(int[][] grid, int[][] solution, int currentDigit) throws SQLException {
-		
-		// New puzzle created -> Store to database
-		if (currentDigit == 9) {
-			
-			// Make new copy of Grid re-utilising the function from PuzzleGenerator class
-			newPuzzle = GeneratingAlgorithm.deepCopy(grid);
-			newSol = GeneratingAlgorithm.deepCopy(solution);
-			
-			// Swap digits in grid using new permutation
-			int currentNum;
-			int newNum;
-			for (int r=0; r<9; r++) {
-				for (int c=0; c<9; c++) {
-					currentNum = newPuzzle[r][c];
-					currentNum = newSol[r][c];
-					if (currentNum != 0) {
-						newNum = SUDOKU_NUMS[currentNum-1];
-						if (newNum != currentNum) {
-							newPuzzle[r][c] = newNum;
-							newSol[r][c] = newNum;
-						}
-					}
-				}
-			}
-
-			// Convert to string and generate a random rating between 4.00 and 5.00
-			stringPuzzle = convertPuzzleToString(newPuzzle);
-			stringSol = convertPuzzleToString(newSol);
-			rating = DF.format(4.00 + (r.nextInt(11) / 10.0));
-			
-			/* Store stringPuzzle in the dedicated SQL database */
-			
-			try {
-				st = conn.prepareStatement("INSERT INTO level"+lvl+" (Puzzle, PuzzleSol, Rating) VALUES (?, ?, ?)");
-				st.setString(1, stringPuzzle);
-				st.setString(2, stringSol);
-				st.setString(3, rating);
-				st.executeUpdate();
-				st.close();
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-			
-			countPuzzles++;
-			totalCount++;
-			long one_percent = (SEED_PUZZLES*maxPuzzles)/100;
-			if (totalCount % one_percent == 0) {
-				System.out.println((totalCount/one_percent)+"%");
-			}
-			// Stop the program immediately if the desired number of maxPuzzles has been generated and stored
-			if (countPuzzles == maxPuzzles) {
-				maxReached = true;
-			}
-
-		}
-		
-		// Find all 9! permutations of Sudoku numbers and use them to exchange corresp. digits in grid
-		int temp;
-		for (int i = currentDigit; i<=9 && !maxReached; i++) {
-			// Swap two digits
-			temp = SUDOKU_NUMS[currentDigit-1];
-			SUDOKU_NUMS[currentDigit-1] = SUDOKU_NUMS[i-1];
-			SUDOKU_NUMS[i-1] = temp;
-	        
-			// Move on to next digit
-			exchangeDigitsAndStore(grid, solvedGrid, currentDigit+1);
-			
-			// Un-swap the two initial digits
-			temp = SUDOKU_NUMS[currentDigit-1];
-			SUDOKU_NUMS[currentDigit-1] = SUDOKU_NUMS[i-1];
-			SUDOKU_NUMS[i-1] = temp;
-		}
+		System.out.println("Finished in "+(endTime-startTime)+" ms. "+totalCount+" puzzles generated and stored.");
 	}
 	
 	/**
-	 * Swap digits of two cells.
+	 * Store a propagated copy of the current seed in the sink.
 	 * 
-	 * @param grid  Sudoku puzzle as a 2D array.
-	 * @param r1  Row coordinate of cell 1.
-	 * @param c1  Column coordinate of cell 1.
-	 * @param r2  Row coordinate of cell 2.
-	 * @param c2  Column coordinate of cell 2.
-	 * @return  Modified grid with the two cells swapped.
+	 * @param puzzle  The encoded puzzle (see {@link SeedPropagator}).
+	 * @param solution  The encoded solution.
+	 * @throws UncheckedIOException if the sink fails, which aborts the run.
 	 */
 	
-	private static int[][] swapTwoCells(int[][] grid, int r1, int c1, int r2, int c2) {
+	private static void store(byte[] puzzle, byte[] solution) {
 		
-		grid[r1][c1] = grid[r1][c1] + grid[r2][c2];
-		grid[r2][c2] = grid[r1][c1] - grid[r2][c2];
-		grid[r1][c1] = grid[r1][c1] - grid[r2][c2];
-		
-		return grid;
-	}
-	
-	/**
-	 * Swap two columns of the same column block.
-	 * 
-	 * @param grid  Sudoku grid.
-	 * @param blockCol  Index of the column block (from 0 to 2).
-	 * @param c1  Index of column 1 within said block.
-	 * @param c2  Index of column 2 within said block.
-	 * @return  Modified grid.
-	 */
-	
-	private static int[][] swapColumns(int[][] grid, int blockCol, int c1, int c2) {
-		
-		boolean invalidInput = blockCol > 2 || c1 > 2 || c2 > 2 || c1 == c2;
-		if (!invalidInput) {
-			for (int r=0; r<=8; r++) {
-				grid = swapTwoCells(grid, r, 3*blockCol+c1, r, 3*blockCol+c2);
-			}
-		}
-		return grid; // If the input is invalid, the initial grid is returned unchanged
-	}
-	
-	/**
-	 * Transpose the grid to generate a new puzzle.
-	 * 
-	 * @return Rotated grid.
-	 */
-	
-	private static int[][] rotateClockwise(int[][] grid) {
-		
-		int[][] rotatedGrid = new int[9][9];
-		
-		for (int r=0; r<=8; r++) {
-			for (int c=0; c<=8; c++) {
-				rotatedGrid[c][8-r] = grid[r][c];
-			}
+		try {
+			sink.add(puzzle, solution, propagator.copyIndex());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return rotatedGrid;
 	}
 	
 	/**
-	 * Encode a given puzzle as a string for easier and more
-	 * accessible storage in the database.
+	 * Close the sink after the run has failed (e.g., the sink itself or a seed generator), so that its threads
+	 * (e.g., the COPY streams) end and the run can abort.
 	 * 
-	 * @param puzzle  Puzzle to be transformed.
-	 * @return A string containing the digits of the puzzle in
-	 * order, separating rows by a semicolon.
+	 * @param failure  Error of the run, to which any error raised while closing the sink is added as suppressed.
 	 */
 	
-	private static String convertPuzzleToString(int[][] puzzle) {
+	private static void closeAfterFailure(Exception failure) {
 		
-		StringBuilder sb = new StringBuilder();
-		
-		for (int r=0; r<=8; r++) {
-			for (int c=0; c<=8; c++) {
-				sb.append(puzzle[r][c]);
-			}
-			sb.append(";");
+		try {
+			sink.close();
+		} catch (IOException e) {
+			failure.addSuppressed(e);
 		}
-		return sb.toString();
-	}
-	
-	/**
-	 * Calculate factorial of a given integer.
-	 * 
-	 * @param number  Argument of the factorial.
-	 * @return Number in format 'long' as the factorial of the argument.
-	 */
-	private static long factorial(int number) {
-	    long result = 1;
-
-	    for (int factor = number; factor >= 2; factor--) {
-	        result *= factor;
-	    }
-	    return result;
 	}
 	
 }
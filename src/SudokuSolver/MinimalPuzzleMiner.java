@@ -0,0 +1,561 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Mines minimal puzzles, i.e., puzzles from which no given can be removed without losing the uniqueness of
+ * the solution, with as few givens as possible (17 being the fewest any Sudoku puzzle can have). They make up
+ * a premium tier above level 5, which stops at 22 givens, and are stored apart from the levels, e.g. in the table
+ * {@code minimal} of the database (see {@link PuzzleSink#addMinimal}).
+ * <p>
+ * Near the end of a dig almost every removal breaks the uniqueness, so checking each of them with the solver
+ * is what makes plain digging too slow for this. Instead, the unavoidable sets of each terminal pattern are
+ * computed first: sets of cells whose numbers can be rearranged into another valid grid (e.g., the 4 corners
+ * of a rectangle holding two numbers crosswise), so that a puzzle with a unique solution must keep at least
+ * one given in each of them. They are found by emptying the cells of every pair of numbers and listing all
+ * the ways to fill them in again. A removal that would leave one of the sets without givens is rejected
+ * without any search, and each removal rejected by the solver adds a new set: the cells where the other
+ * solution found differs from the pattern (see {@link DigSession#getCounterexample()}).
+ * <p>
+ * Each pattern is first dug down to a minimal puzzle in a random order. The puzzle is then improved by
+ * replacing two of its givens with a single new one, which must lie in every set the two givens leave empty,
+ * and digging the result down to a minimal puzzle again. When no such replacement exists, a single given is
+ * replaced with another one instead, up to {@code MAX_SIDEWAYS} times, which leads to a different minimal
+ * puzzle with as many givens. This goes on until no replacement works or the search budget of the pattern
+ * runs out, and the last minimal puzzle reached (which has the fewest givens) is kept.
+ * <p>
+ * The number of patterns, the budget per pattern and the number of threads can be set from the command line,
+ * e.g. {@code -Dsudoku.minimalPatterns=1000 -Dsudoku.minimalNodes=5000000 -Dsudoku.digThreads=8}; the
+ * deadline of the run is shared with the levels ({@code -Dsudoku.deadline}, see {@link LevelScheduler}).
+ *
+ * @author Nicols Moro
+ */
+
+class MinimalPuzzleMiner {
+	
+	static final int STREAM = 6; // key of the generators of the minimal puzzles in RandomStreams (levels 1 to 5 are the seeds)
+	static final int PATTERNS = Integer.getInteger("sudoku.minimalPatterns", 100); // patterns to be mined per run
+	private static final long PATTERN_NODE_LIM = Long.getLong("sudoku.minimalNodes", 2000000); // search nodes shared by all the checks of a pattern
+	private static final long PATTERN_TIME_LIM = 60_000_000_000L; // safety net of 1 minute (in nanoseconds) per pattern
+	private static final int MAX_SIDEWAYS = Integer.getInteger("sudoku.minimalSideways", 100); // replacements of one given by another per pattern
+	private static final int MAX_SOLUTIONS = 4096; // other fillings listed per pair of numbers
+	private static final long REPORT_INTERVAL = 60_000_000_000L; // nanoseconds between two progress reports
+	private static final long HIGH_CELLS = (1L << 17)-1; // cells 64 to 80 in the second word of a cell set
+	
+	/**
+	 * A mined pattern. Only the counters are set if the budget ran out before the first minimal puzzle.
+	 */
+	
+	static class Result {
+		
+		private static final Result END = new Result(0);
+		
+		final int index; // pattern of the run, from 1 on
+		int[][] puzzle; // minimal, with a unique solution
+		int[][] solution;
+		int givens;
+		int precomputedSets; // unavoidable sets found before digging
+		int learnedSets; // unavoidable sets added from the solver's counterexamples
+		long prunedRemovals; // removals rejected without search
+		long checkedRemovals; // removals checked by the solver
+		int improvements; // replacements that led to a puzzle with fewer givens
+		long nodes;
+		
+		Result(int index) {
+			
+			this.index = index;
+		}
+	}
+	
+	private final BacktrackingAlgorithm searcher = new BacktrackingAlgorithm();
+	private final DigSession session = new DigSession(searcher);
+	private final BoardState board = new BoardState();
+	private final int[] pattern = new int[81];
+	
+	// Unavoidable sets of the current pattern, as two 64-bit masks of cells (0 to 63 and 64 to 80), none containing another
+	private long[] setLow = new long[256];
+	private long[] setHigh = new long[256];
+	private int numSets;
+	private int fillingsLeft; // other fillings that may still be listed for the current pair of numbers
+	
+	// Givens of the current puzzle, as the masks of a set
+	private long givenLow;
+	private long givenHigh;
+	
+	/**
+	 * Mine the minimal puzzle with the fewest givens reachable from a terminal pattern within its budget.
+	 * It is meant to be used by a single thread.
+	 *
+	 * @param solution  A full, valid 2D (9x9) grid. It is not modified.
+	 * @param random  Generator of the pattern (see {@link RandomStreams}), used for the digging orders.
+	 * @param index  Index of the pattern within the run.
+	 * @return The minimal puzzle and the counters of the search.
+	 */
+	
+	Result mine(int[][] solution, SplittableRandom random, int index) {
+		
+		Result result = new Result(index);
+		result.solution = GeneratingAlgorithm.deepCopy(solution);
+		for (int cell=0; cell<81; cell++) {
+			pattern[cell] = solution[cell/9][cell%9];
+		}
+		findUnavoidableSets();
+		result.precomputedSets = numSets;
+		
+		SearchBudget budget = new SearchBudget(PATTERN_NODE_LIM, PATTERN_TIME_LIM);
+		givenLow = -1L;
+		givenHigh = HIGH_CELLS;
+		
+		int sidewaysMoves = 0;
+		while (minimize(random, budget, result)) {
+			
+			// Keep the minimal puzzle reached (never more givens than the last one), then try to replace two of its givens with one
+			result.puzzle = toGrid(givenLow, givenHigh);
+			result.givens = Long.bitCount(givenLow)+Long.bitCount(givenHigh);
+			if (replace(2, random, budget, result)) {
+				result.improvements++;
+			} else if (sidewaysMoves < MAX_SIDEWAYS && !budget.isExhausted() && replace(1, random, budget, result)) {
+				sidewaysMoves++; // stuck: move to another puzzle with as many givens and go on from there
+			} else {
+				break;
+			}
+		}
+		result.nodes = budget.getNodes();
+		return result;
+	}
+	
+	/**
+	 * Dig the current puzzle until no given can be removed, in a random order.
+	 *
+	 * @return True if every given has been tried, i.e., the puzzle is minimal; false if the budget ran out.
+	 */
+	
+	private boolean minimize(SplittableRandom random, SearchBudget budget, Result result) {
+		
+		int[] order = new int[Long.bitCount(givenLow)+Long.bitCount(givenHigh)];
+		int size = 0;
+		for (int cell=0; cell<81; cell++) {
+			if (isGiven(cell, givenLow, givenHigh)) {
+				order[size++] = cell;
+			}
+		}
+		shuffle(order, random);
+		
+		session.start(toGrid(givenLow, givenHigh));
+		for (int cell : order) {
+			
+			// A given that is the only one left in an unavoidable set has to stay
+			if (isLastGiven(cell)) {
+				result.prunedRemovals++;
+				continue;
+			}
+			result.checkedRemovals++;
+			int dug = session.tryDig(cell/9, cell%9, budget);
+			if (dug == -1) {
+				return false;
+			}
+			if (dug == 1) {
+				if (cell < 64) {
+					givenLow &= ~(1L << cell);
+				} else {
+					givenHigh &= ~(1L << (cell-64));
+				}
+			} else if (learnSet(session.getCounterexample())) {
+				result.learnedSets++;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Look for givens of the current (minimal) puzzle that can be replaced with a single new one: two givens,
+	 * which gives a puzzle with fewer givens, or one given, which gives a different puzzle with as many givens
+	 * from which the digging can go on. Removing the givens leaves some unavoidable sets empty, so the new
+	 * given must lie in all of them; only those cells are checked with the solver, and each failed check
+	 * narrows them down further.
+	 *
+	 * @param removed  Number of givens to be replaced, 1 or 2.
+	 * @return True if a replacement was found and applied; false if there is none or the budget ran out.
+	 */
+	
+	private boolean replace(int removed, SplittableRandom random, SearchBudget budget, Result result) {
+		
+		int[] givens = new int[Long.bitCount(givenLow)+Long.bitCount(givenHigh)];
+		int size = 0;
+		for (int cell=0; cell<81; cell++) {
+			if (isGiven(cell, givenLow, givenHigh)) {
+				givens[size++] = cell;
+			}
+		}
+		// Each pair of givens as first*81+second; a single given is a pair of itself
+		int[] pairs = new int[removed == 1 ? size : size*(size-1)/2];
+		int numPairs = 0;
+		for (int i=0; i<size; i++) {
+			for (int j = removed == 1 ? i : i+1; j < (removed == 1 ? i+1 : size); j++) {
+				pairs[numPairs++] = givens[i]*81+givens[j];
+			}
+		}
+		shuffle(pairs, random);
+		
+		for (int pair : pairs) {
+			int first = pair/81;
+			int second = pair%81;
+			long restLow = givenLow & ~cellLow(first) & ~cellLow(second);
+			long restHigh = givenHigh & ~cellHigh(first) & ~cellHigh(second);
+			
+			// The new given has to hit every set left empty
+			long candLow = ~givenLow;
+			long candHigh = HIGH_CELLS & ~givenHigh;
+			for (int s=0; s<numSets; s++) {
+				if ((setLow[s] & restLow) == 0 && (setHigh[s] & restHigh) == 0) {
+					candLow &= setLow[s];
+					candHigh &= setHigh[s];
+				}
+			}
+			
+			while ((candLow | candHigh) != 0) {
+				int added;
+				if (candLow != 0) {
+					added = Long.numberOfTrailingZeros(candLow);
+					candLow &= candLow-1;
+				} else {
+					added = 64+Long.numberOfTrailingZeros(candHigh);
+					candHigh &= candHigh-1;
+				}
+				
+				// The puzzle with the new given is still unique, so the givens can be dug from it one at a time
+				result.checkedRemovals++;
+				session.start(toGrid(givenLow | cellLow(added), givenHigh | cellHigh(added)));
+				int dug = session.tryDig(first/9, first%9, budget);
+				if (dug == 1 && second != first) {
+					dug = session.tryDig(second/9, second%9, budget);
+				}
+				if (dug == -1) {
+					return false;
+				}
+				if (dug == 1) {
+					givenLow = restLow | cellLow(added);
+					givenHigh = restHigh | cellHigh(added);
+					return true;
+				}
+				
+				// The new set misses the rest of the givens, so any other new given has to hit it too
+				if (learnSet(session.getCounterexample())) {
+					result.learnedSets++;
+					candLow &= setLow[numSets-1];
+					candHigh &= setHigh[numSets-1];
+				}
+			}
+		}
+		return false;
+	}
+	
+	/* UNAVOIDABLE SETS */
+	
+	/**
+	 * Find the unavoidable sets of the current pattern within every pair of numbers: with the cells of the two
+	 * numbers emptied, each other way of filling them in gives the set of cells that changed. Triples of numbers
+	 * give many more fillings, and listing them takes longer than the checks their sets save; the larger sets
+	 * are learned from the counterexamples instead.
+	 */
+	
+	private void findUnavoidableSets() {
+		
+		numSets = 0;
+		int[][] grid = new int[9][9];
+		for (int digits=0; digits<(1 << 9); digits++) {
+			if (Integer.bitCount(digits) != 2) {
+				continue;
+			}
+			for (int cell=0; cell<81; cell++) {
+				int num = pattern[cell];
+				grid[cell/9][cell%9] = (digits & (1 << (num-1))) != 0 ? 0 : num;
+			}
+			board.load(grid);
+			fillingsLeft = MAX_SOLUTIONS;
+			listFillings();
+		}
+	}
+	
+	/**
+	 * Depth-first search over all the ways of filling in the empty cells of the board, adding the cells where
+	 * each of them differs from the pattern as an unavoidable set.
+	 */
+	
+	private void listFillings() {
+		
+		int cell = -1;
+		int fewestCandidates = 10;
+		for (int i=0; i<81 && fewestCandidates > 1; i++) {
+			if (board.cells[i] == 0) {
+				int numCandidates = Integer.bitCount(board.getCandidates(i));
+				if (numCandidates < fewestCandidates) {
+					fewestCandidates = numCandidates;
+					cell = i;
+				}
+			}
+		}
+		if (cell == -1) {
+			learnSet(board.cells);
+			fillingsLeft--;
+			return;
+		}
+		
+		int candidates = board.getCandidates(cell);
+		while (candidates != 0 && fillingsLeft > 0) {
+			int num = Integer.numberOfTrailingZeros(candidates)+1;
+			candidates &= candidates-1;
+			
+			int mark = board.trailSize;
+			board.assign(cell, num);
+			listFillings();
+			board.undoTo(mark);
+		}
+	}
+	
+	/**
+	 * Add the cells where a valid grid differs from the pattern as an unavoidable set, unless they contain
+	 * one of the sets already known; the known sets containing the new one are dropped.
+	 *
+	 * @param grid  A full, valid grid as 81 cells, or null.
+	 * @return True if the set has been added; it is then the last one.
+	 */
+	
+	private boolean learnSet(int[] grid) {
+		
+		if (grid == null) {
+			return false;
+		}
+		long low = 0;
+		long high = 0;
+		for (int cell=0; cell<81; cell++) {
+			if (grid[cell] != pattern[cell]) {
+				low |= cellLow(cell);
+				high |= cellHigh(cell);
+			}
+		}
+		if ((low | high) == 0) {
+			return false; // the pattern itself
+		}
+		
+		int kept = 0;
+		for (int s=0; s<numSets; s++) {
+			if ((setLow[s] & ~low) == 0 && (setHigh[s] & ~high) == 0) {
+				return false; // a smaller set is already known
+			}
+			if ((low & ~setLow[s]) != 0 || (high & ~setHigh[s]) != 0) {
+				setLow[kept] = setLow[s];
+				setHigh[kept] = setHigh[s];
+				kept++;
+			}
+		}
+		numSets = kept;
+		if (numSets == setLow.length) {
+			setLow = Arrays.copyOf(setLow, 2*numSets);
+			setHigh = Arrays.copyOf(setHigh, 2*numSets);
+		}
+		setLow[numSets] = low;
+		setHigh[numSets] = high;
+		numSets++;
+		return true;
+	}
+	
+	/**
+	 * @return True if the cell is a given and the only one left in some unavoidable set.
+	 */
+	
+	private boolean isLastGiven(int cell) {
+		
+		long low = cellLow(cell);
+		long high = cellHigh(cell);
+		for (int s=0; s<numSets; s++) {
+			if ((setLow[s] & givenLow) == low && (setHigh[s] & givenHigh) == high) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Shuffle an array in place (Fisher-Yates).
+	 */
+	
+	private static void shuffle(int[] array, SplittableRandom random) {
+		
+		for (int i = array.length - 1; i > 0; i--) {
+			int m = random.nextInt(i + 1);
+			int temp = array[i];
+			array[i] = array[m];
+			array[m] = temp;
+		}
+	}
+	
+	private static boolean isGiven(int cell, long low, long high) {
+		
+		return ((cell < 64 ? low >>> cell : high >>> (cell-64)) & 1) != 0;
+	}
+	
+	private static long cellLow(int cell) {
+		
+		return cell < 64 ? 1L << cell : 0;
+	}
+	
+	private static long cellHigh(int cell) {
+		
+		return cell < 64 ? 0 : 1L << (cell-64);
+	}
+	
+	/**
+	 * @return The puzzle made of the pattern's numbers in the given cells.
+	 */
+	
+	private int[][] toGrid(long low, long high) {
+		
+		int[][] grid = new int[9][9];
+		for (int cell=0; cell<81; cell++) {
+			if (isGiven(cell, low, high)) {
+				grid[cell/9][cell%9] = pattern[cell];
+			}
+		}
+		return grid;
+	}
+	
+	/* MINING RUN */
+	
+	/**
+	 * Mine minimal puzzles from {@code numPatterns} new terminal patterns in parallel, store them in the sink
+	 * and report how many puzzles per hour are found with each number of givens.
+	 *
+	 * @param sink  Destination of the minimal puzzles, chosen as that of the levels (see {@link SinkType}); it is
+	 * left open.
+	 * @param numPatterns  Number of terminal patterns to be mined.
+	 * @param numThreads  Number of worker threads.
+	 * @param runSeed  Seed of the run (see {@link RandomStreams}).
+	 * @param timeLimit  Maximum time in nanoseconds to start mining new patterns. If set to 0, there is no deadline.
+	 * @throws IOException if the sink fails.
+	 * @throws InterruptedException if interrupted while waiting for the workers.
+	 * @throws IllegalStateException if a worker fails; the other workers stop after their current pattern.
+	 */
+	
+	static void minePuzzles(PuzzleSink sink, int numPatterns, int numThreads, long runSeed, long timeLimit) throws IOException, InterruptedException {
+		
+		long startTime = System.nanoTime();
+		System.out.println("Mining minimal puzzles from "+numPatterns+" patterns with "+numThreads+" threads...");
+		System.out.println("Run seed: "+runSeed+" (set -Dsudoku.runSeed="+runSeed+" with the same number of patterns to reproduce this run)\n");
+		
+		BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(2*numThreads);
+		AtomicInteger nextPattern = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // first error of a worker
+		Thread[] workers = new Thread[numThreads];
+		for (int i=0; i<numThreads; i++) {
+			workers[i] = new Thread(() -> {
+				try {
+					try {
+						MinimalPuzzleMiner miner = new MinimalPuzzleMiner();
+						int index;
+						while (failure.get() == null && (index = nextPattern.incrementAndGet()) <= numPatterns
+								&& (timeLimit == 0 || System.nanoTime()-startTime < timeLimit)) {
+							SplittableRandom random = RandomStreams.forSeed(runSeed, STREAM, index);
+							results.put(miner.mine(TerminalPattern.createPattern(random), random, index));
+						}
+					} catch (RuntimeException | Error e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						results.put(Result.END);
+					}
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}, "minimal-miner-"+i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		
+		long[] perGivens = new long[82]; // puzzles found with each number of givens
+		long patterns = 0;
+		long unfinished = 0;
+		long precomputedSets = 0;
+		long learnedSets = 0;
+		long pruned = 0;
+		long checked = 0;
+		long improvements = 0;
+		long nodes = 0;
+		long lastReport = System.nanoTime();
+		
+		int finishedWorkers = 0;
+		while (finishedWorkers < numThreads) {
+			Result result = results.take();
+			if (result == Result.END) {
+				finishedWorkers++;
+				continue;
+			}
+			patterns++;
+			precomputedSets += result.precomputedSets;
+			learnedSets += result.learnedSets;
+			pruned += result.prunedRemovals;
+			checked += result.checkedRemovals;
+			improvements += result.improvements;
+			nodes += result.nodes;
+			if (result.puzzle == null) {
+				unfinished++;
+			} else {
+				perGivens[result.givens]++;
+				sink.addMinimal(encode(result.puzzle), encode(result.solution), result.givens);
+			}
+			
+			if (System.nanoTime()-lastReport >= REPORT_INTERVAL) {
+				System.out.println(report(perGivens, System.nanoTime()-startTime)+"\n");
+				lastReport = System.nanoTime();
+			}
+		}
+		
+		if (failure.get() != null) {
+			throw new IllegalStateException("A minimal puzzle miner failed", failure.get());
+		}
+		
+		System.out.println(report(perGivens, System.nanoTime()-startTime));
+		System.out.println(patterns+" patterns mined, "+unfinished+" out of budget before reaching a minimal puzzle, "
+				+improvements+" improvements by replacing two givens with one");
+		System.out.println("Unavoidable sets: "+precomputedSets+" precomputed, "+learnedSets+" learned from counterexamples; "
+				+"removals: "+pruned+" rejected without search, "+checked+" checked by the solver ("+nodes+" search nodes)");
+	}
+	
+	/**
+	 * @return One line per number of givens found, with the number of puzzles and the rate per hour.
+	 */
+	
+	static String report(long[] perGivens, long elapsed) {
+		
+		double hours = elapsed/3.6e12;
+		StringBuilder lines = new StringBuilder("Minimal puzzles after "+elapsed/1_000_000_000+" s:");
+		for (int givens=17; givens<=81; givens++) {
+			if (perGivens[givens] > 0) {
+				lines.append(String.format("%n%d givens: %d puzzles, %.1f per hour", givens, perGivens[givens], perGivens[givens]/hours));
+			}
+		}
+		return lines.toString();
+	}
+	
+	/**
+	 * @return The puzzle encoded in the same format as the puzzles of the levels (see {@link SeedPropagator}).
+	 */
+	
+	private static byte[] encode(int[][] puzzle) {
+		
+		StringBuilder sb = new StringBuilder();
+		for (int r=0; r<=8; r++) {
+			for (int c=0; c<=8; c++) {
+				sb.append(puzzle[r][c]);
+			}
+			sb.append(";");
+		}
+		return sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,262 @@
+package SudokuSolver;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pre-generates terminal patterns on dedicated threads, so that the threads digging puzzles do not have to
+ * create them. The patterns of each level are kept in a bounded lock-free {@link RingBuffer}: producers pause
+ * for a moment when all of them are full, and consumers never wait; if the pool of a level happens to be
+ * empty, the pattern is created in the calling thread instead and the event is counted as a starvation.
+ * <p>
+ * Every seed puzzle of the run (one per level and index) is claimed once, in order within its level, by
+ * whichever thread gets to it first, and its pattern is created with the generator of that seed (see
+ * {@link RandomStreams}). Each entry carries its seed and its generator, so the puzzles obtained from it are
+ * the same whichever thread created the pattern. Which level is dug next is up to the consumers (see
+ * {@link LevelScheduler}). If a producer fails, the seeds it had claimed are lost, so the consumers waiting
+ * for them fail as well instead of waiting forever.
+ * <p>
+ * The number of producer threads and the capacity of the pool of each level can be set from the command line,
+ * e.g. {@code -Dsudoku.patternThreads=2 -Dsudoku.patternPoolSize=1024}.
+ *
+ * @author Nicols Moro
+ */
+
+class PatternPool {
+	
+	static final int PRODUCER_THREADS = Integer.getInteger("sudoku.patternThreads", 1); // a pattern takes microseconds, digging takes milliseconds
+	static final int CAPACITY = Integer.getInteger("sudoku.patternPoolSize", 256); // per level; a power of 2
+	private static final long FULL_PAUSE = 100_000; // nanoseconds a producer waits when the pool is full
+	
+	/**
+	 * A seed puzzle to be generated, with its first terminal pattern.
+	 */
+	
+	static class Entry {
+		
+		final int level;
+		final int seed; // index within the level, from 1 on
+		final SplittableRandom random; // generator of this seed, to be used for anything else it needs
+		final int[][] pattern;
+		
+		private Entry(int level, int seed, SplittableRandom random) {
+			
+			this.level = level;
+			this.seed = seed;
+			this.random = random;
+			this.pattern = TerminalPattern.createPattern(random);
+		}
+	}
+	
+	private final RingBuffer<Entry>[] patterns; // per level (1 to levels)
+	private final Thread[] producers;
+	private volatile boolean running = true;
+	private volatile Throwable failure; // first error of a producer
+	
+	// Seeds of the run
+	private final long runSeed;
+	private final int levels;
+	private final int[] targets; // seeds per level
+	private final AtomicInteger[] nextSeed; // index of the next seed to be claimed in each level, from 1 on
+	private final AtomicInteger[] takenSeeds;
+	
+	// Metrics
+	private final LongAdder produced = new LongAdder();
+	private final LongAdder taken = new LongAdder();
+	private final LongAdder starved = new LongAdder();
+	private final LongAdder fullPauses = new LongAdder();
+	
+	/**
+	 * Create the pool and start its producers.
+	 *
+	 * @param numProducers  Number of producer threads.
+	 * @param capacity  Maximum number of patterns kept for each level; must be a power of 2.
+	 * @param runSeed  Seed of the run, from which the generator of every seed puzzle is derived.
+	 * @param targets  Number of seed puzzles of each level, from level 1 on.
+	 */
+	
+	@SuppressWarnings("unchecked")
+	PatternPool(int numProducers, int capacity, long runSeed, int[] targets) {
+		
+		this.runSeed = runSeed;
+		this.levels = targets.length;
+		this.targets = new int[levels+1];
+		this.patterns = (RingBuffer<Entry>[]) new RingBuffer<?>[levels+1];
+		this.nextSeed = new AtomicInteger[levels+1];
+		this.takenSeeds = new AtomicInteger[levels+1];
+		for (int level=1; level<=levels; level++) {
+			this.targets[level] = targets[level-1];
+			this.patterns[level] = new RingBuffer<Entry>(capacity);
+			this.nextSeed[level] = new AtomicInteger(1);
+			this.takenSeeds[level] = new AtomicInteger();
+		}
+		this.producers = new Thread[numProducers];
+		for (int i=0; i<numProducers; i++) {
+			producers[i] = new Thread(this::produce, "pattern-producer-"+i);
+			producers[i].setDaemon(true);
+			producers[i].start();
+		}
+	}
+	
+	/**
+	 * Producer loop: keep the pool of every level full until all their seeds have been claimed or the pool is closed.
+	 * A producer holds at most one pattern per level that did not fit in its pool yet. If it fails, its error is
+	 * recorded for the consumers (see {@link #take}).
+	 */
+	
+	private void produce() {
+		
+		Entry[] pending = new Entry[levels+1];
+		boolean unclaimed = true;
+		try {
+			while (running && unclaimed) {
+				
+				boolean progress = false;
+				unclaimed = false;
+				for (int level=1; level<=levels; level++) {
+					if (pending[level] == null && patterns[level].size() < patterns[level].capacity()) {
+						pending[level] = claimNext(level);
+					}
+					if (pending[level] != null && patterns[level].offer(pending[level])) {
+						produced.increment();
+						pending[level] = null;
+						progress = true;
+					}
+					unclaimed |= pending[level] != null || nextSeed[level].get() <= targets[level];
+				}
+				if (!progress && unclaimed) {
+					fullPauses.increment();
+					LockSupport.parkNanos(FULL_PAUSE);
+				}
+			}
+		} catch (Throwable t) {
+			if (failure == null) {
+				failure = t;
+			}
+		}
+	}
+	
+	/**
+	 * Claim the next seed of a level and create its first pattern.
+	 *
+	 * @return The new entry, or null if every seed of the level has already been claimed.
+	 */
+	
+	private Entry claimNext(int level) {
+		
+		int seed = nextSeed[level].getAndIncrement();
+		if (seed > targets[level]) {
+			return null;
+		}
+		return new Entry(level, seed, RandomStreams.forSeed(runSeed, level, seed));
+	}
+	
+	/**
+	 * Take the next seed puzzle of a level. The calling thread only waits once every seed of the level has been
+	 * claimed, for the producers to hand over the last ones.
+	 *
+	 * @param level  Level of the seed, from 1 on.
+	 * @return An entry from the pool or, if it is empty, a new one created by the calling thread;
+	 * null once every seed of the level has been taken.
+	 * @throws IllegalStateException if it has to wait and a producer has failed, since the seeds it held would never come.
+	 */
+	
+	Entry take(int level) {
+		
+		while (true) {
+			Entry entry = patterns[level].poll();
+			if (entry == null) {
+				entry = claimNext(level);
+				if (entry != null) {
+					starved.increment();
+				}
+			}
+			if (entry != null) {
+				taken.increment();
+				takenSeeds[level].incrementAndGet();
+				return entry;
+			}
+			if (takenSeeds[level].get() >= targets[level]) {
+				return null;
+			}
+			if (failure != null) {
+				throw new IllegalStateException("A pattern producer failed", failure);
+			}
+			Thread.onSpinWait();
+		}
+	}
+	
+	/**
+	 * Stop the producers and wait for them to finish.
+	 *
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if a producer has failed, even if no consumer had to wait for it.
+	 */
+	
+	void close() throws InterruptedException {
+		
+		running = false;
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		if (failure != null) {
+			throw new IllegalStateException("A pattern producer failed", failure);
+		}
+	}
+	
+	/**
+	 * @return Number of patterns currently waiting in the pool.
+	 */
+	
+	int getDepth() {
+		
+		int depth = 0;
+		for (int level=1; level<=levels; level++) {
+			depth += patterns[level].size();
+		}
+		return depth;
+	}
+	
+	/**
+	 * @return Number of times a consumer found the pool empty and had to create its own pattern.
+	 */
+	
+	long getStarvations() {
+		
+		return starved.sum();
+	}
+	
+	/**
+	 * @return Number of seeds taken from the pool, including those created by starved consumers.
+	 */
+	
+	long getTaken() {
+		
+		return taken.sum();
+	}
+	
+	/**
+	 * @return Number of patterns added to the pool by the producers.
+	 */
+	
+	long getProduced() {
+		
+		return produced.sum();
+	}
+	
+	/**
+	 * @return Summary of the metrics of the pool.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		long takenPatterns = getTaken();
+		long starvations = getStarvations();
+		return "Pattern pool: "+getProduced()+" produced, "+takenPatterns+" taken, "+starvations+" starved ("
+				+(takenPatterns == 0 ? 0 : 100*starvations/takenPatterns)+"%), "+fullPauses.sum()+" producer pauses, depth "
+				+getDepth()+"/"+levels*patterns[1].capacity();
+	}
+}
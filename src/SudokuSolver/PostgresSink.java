@@ -0,0 +1,331 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Stores the puzzles in the dedicated PostgreSQL database (see {@link DatabaseManagement}), which is created
+ * when the sink is opened, along with the tables of the chosen format if they do not exist yet (e.g., because the
+ * database already existed). The puzzles are stored in the format given by {@code STORAGE}: as strings, as packed
+ * records or as their seed and transformation index (see {@link PuzzleCodec}); and either with batched INSERTs
+ * (see {@link BatchWriter}) or, for the strings, with COPY streams (see {@link CopyLoader}). With the binary
+ * formats, the copies of a seed are stored in rows of up to {@code CHUNK_COPIES} records each, and the growth of
+ * the tables on disk is measured, so that the summary tells the bytes taken per puzzle. The minimal puzzles are
+ * stored as strings in the table {@code minimal}, whatever the format, since they are few.
+ * <p>
+ * All can be set from the command line, e.g. {@code -Dsudoku.storage=derived}, {@code -Dsudoku.loader=copy} or
+ * {@code -Dsudoku.storageChunk=4096}.
+ *
+ * @author Nicols Moro
+ */
+
+class PostgresSink implements PuzzleSink {
+	
+	static final String STORAGE = System.getProperty("sudoku.storage", "text"); // text, packed or derived
+	static final boolean COPY = "copy".equals(System.getProperty("sudoku.loader")); // COPY streams instead of batched INSERTs
+	static final int CHUNK_COPIES = Integer.getInteger("sudoku.storageChunk", 1024); // records per row of the binary formats
+	
+	private final Connection conn;
+	private BatchWriter writer; // one batched statement per level table, for the format given by STORAGE
+	private BatchWriter minimalWriter; // created along with the table 'minimal' when the first minimal puzzle is added
+	private CopyLoader loader; // instead of the writer, when loading with COPY
+	
+	private ByteBuffer chunk; // records of the current seed not stored yet (binary formats)
+	private int chunkNumber; // chunks of the current seed stored so far
+	private int level;
+	private String rating;
+	private int seedId; // id of the current seed in the table 'seeds' (derived storage)
+	
+	private long puzzles;
+	private final long initialBytes; // size of the tables on disk when opened
+	private long finalBytes = -1; // and when closed
+	
+	/**
+	 * Create the database, connect to it and create the tables of the format given by {@code STORAGE}.
+	 *
+	 * @throws SQLException when connection to the database fails or the tables cannot be created.
+	 * @throws IllegalArgumentException if {@code STORAGE} is unknown, COPY is requested for another storage than
+	 * text, or {@code CHUNK_COPIES} is not positive.
+	 */
+	
+	PostgresSink() throws SQLException {
+		
+		if (!STORAGE.equals("text") && !STORAGE.equals("packed") && !STORAGE.equals("derived")) {
+			throw new IllegalArgumentException("sudoku.storage must be text, packed or derived: "+STORAGE);
+		}
+		if (COPY && !STORAGE.equals("text")) {
+			throw new IllegalArgumentException("sudoku.loader=copy only loads the text storage: "+STORAGE);
+		}
+		if (CHUNK_COPIES < 1) {
+			throw new IllegalArgumentException("sudoku.storageChunk must be positive: "+CHUNK_COPIES);
+		}
+		
+		// Create dedicated DB to store all the puzzles and their solutions
+		DatabaseManagement.createDB();
+		
+		try {
+			Class.forName(DatabaseManagement.DRIVER);
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("PostgreSQL driver not found: "+DatabaseManagement.DRIVER, e);
+		}
+		conn = DriverManager.getConnection(DatabaseManagement.BATCH_DB_URL, DatabaseManagement.USER, DatabaseManagement.PASS);
+		try (Statement stmt = conn.createStatement()) {
+			if (STORAGE.equals("derived")) {
+				stmt.executeUpdate(DatabaseManagement.SEEDS_TABLE);
+			}
+			for (int level=1; level<=5; level++) {
+				stmt.executeUpdate(String.format(createStatement(), level));
+			}
+		}
+		initialBytes = tableBytes();
+		if (!STORAGE.equals("text")) {
+			chunk = PuzzleCodec.allocate(CHUNK_COPIES, STORAGE.equals("packed") ? PuzzleCodec.RECORD_BYTES : PuzzleCodec.INDEX_BYTES);
+		}
+		if (COPY) {
+			loader = new CopyLoader(DatabaseManagement.NEW_DB_URL, DatabaseManagement.USER, DatabaseManagement.PASS, 5, CopyLoader.SHARDS);
+		} else {
+			writer = new BatchWriter(conn, insertStatement(), 5, BatchWriter.BATCH_SIZE, BatchWriter.COMMIT_SIZE);
+		}
+	}
+	
+	/**
+	 * @return The CREATE TABLE statement of the format given by {@code STORAGE}, with {@code %d} in place of the level.
+	 */
+	
+	private static String createStatement() {
+		
+		switch (STORAGE) {
+			case "packed":
+				return DatabaseManagement.PACKED_TABLE;
+			case "derived":
+				return DatabaseManagement.DERIVED_TABLE;
+			default:
+				return DatabaseManagement.LEVEL_TABLE;
+		}
+	}
+	
+	/**
+	 * @return The INSERT statement of the format given by {@code STORAGE}, with {@code %d} in place of the level.
+	 */
+	
+	private static String insertStatement() {
+		
+		switch (STORAGE) {
+			case "packed":
+				return "INSERT INTO level%d_packed (Rating, Records) VALUES (?, ?)";
+			case "derived":
+				return "INSERT INTO level%d_derived (Seed, Chunk, Transforms) VALUES (?, ?, ?)";
+			default:
+				return "INSERT INTO level%d (Puzzle, PuzzleSol, Rating) VALUES (?, ?, ?)";
+		}
+	}
+	
+	/**
+	 * @return Total size on disk of the tables of the format given by {@code STORAGE}, with their indexes and
+	 * TOAST data, in bytes.
+	 */
+	
+	private long tableBytes() throws SQLException {
+		
+		String table = STORAGE.equals("text") ? "level%d" : "level%d_"+STORAGE;
+		long bytes = 0;
+		try (PreparedStatement size = conn.prepareStatement("SELECT pg_total_relation_size(?::regclass)")) {
+			for (int level=0; level<=5; level++) {
+				if (level == 0 && !STORAGE.equals("derived")) {
+					continue;
+				}
+				size.setString(1, level == 0 ? "seeds" : String.format(table, level));
+				try (ResultSet rs = size.executeQuery()) {
+					rs.next();
+					bytes += rs.getLong(1);
+				}
+			}
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Start a new seed, once the last chunk of the previous one has been added to its batch; with the derived
+	 * storage, the seed is stored as a packed record in the table 'seeds' so that its copies can refer to it.
+	 */
+	
+	@Override
+	public void startSeed(SeedGenerator.Seed seed, String rating) throws IOException {
+		
+		try {
+			flushChunk();
+		} catch (SQLException e) {
+			throw new IOException("Could not store the puzzles", e);
+		}
+		this.level = seed.level;
+		this.rating = rating;
+		this.chunkNumber = 0;
+		if (STORAGE.equals("derived")) {
+			try (PreparedStatement insert = conn.prepareStatement("INSERT INTO seeds (Level, Record, Rating) VALUES (?, ?, ?) RETURNING seed_id")) {
+				insert.setInt(1, seed.level);
+				insert.setBytes(2, PuzzleCodec.encode(seed.puzzle, seed.solution));
+				insert.setString(3, rating);
+				try (ResultSet rs = insert.executeQuery()) {
+					rs.next();
+					seedId = rs.getInt(1);
+				}
+			} catch (SQLException e) {
+				throw new IOException("Could not store the seed", e);
+			}
+		}
+	}
+	
+	/**
+	 * Add the copy to the batch of its level, or to its COPY stream; with the binary formats, to the chunk of
+	 * its seed, which is added to the batch once full.
+	 */
+	
+	@Override
+	public void add(byte[] puzzle, byte[] solution, long index) throws IOException {
+		
+		try {
+			puzzles++;
+			if (COPY) {
+				loader.add(level, puzzle, solution, rating);
+				return;
+			}
+			switch (STORAGE) {
+				case "packed":
+					PuzzleCodec.encode(puzzle, solution, chunk);
+					break;
+				case "derived":
+					PuzzleCodec.encodeIndex(index, chunk);
+					break;
+				default:
+					PreparedStatement st = writer.statement(level);
+					st.setString(1, new String(puzzle, StandardCharsets.US_ASCII));
+					st.setString(2, new String(solution, StandardCharsets.US_ASCII));
+					st.setString(3, rating);
+					writer.add(level);
+					return;
+			}
+			if (!chunk.hasRemaining()) {
+				flushChunk();
+			}
+		} catch (SQLException e) {
+			throw new IOException("Could not store the puzzle", e);
+		}
+	}
+	
+	/**
+	 * Add a minimal puzzle to the table 'minimal', which is created first if needed.
+	 */
+	
+	@Override
+	public void addMinimal(byte[] puzzle, byte[] solution, int givens) throws IOException {
+		
+		try {
+			if (minimalWriter == null) {
+				try (Statement stmt = conn.createStatement()) {
+					stmt.executeUpdate(DatabaseManagement.MINIMAL_TABLE);
+				}
+				minimalWriter = minimalWriter(conn);
+			}
+			addMinimal(minimalWriter, puzzle, solution, givens);
+		} catch (SQLException e) {
+			throw new IOException("Could not store the minimal puzzle", e);
+		}
+	}
+	
+	/**
+	 * @return Writer of the minimal puzzles into the table 'minimal' (also used by {@link EmbeddedDbSink}), which
+	 * commits each of them at once: they take minutes each to mine, so none should be lost if the run is aborted.
+	 * @throws SQLException if the statement cannot be prepared.
+	 */
+	
+	static BatchWriter minimalWriter(Connection conn) throws SQLException {
+		
+		return new BatchWriter(conn, "INSERT INTO minimal (Puzzle, PuzzleSol, Givens) VALUES (?, ?, ?)", 1, 1, 1);
+	}
+	
+	/**
+	 * Write a minimal puzzle with a writer given by {@link #minimalWriter}.
+	 *
+	 * @throws SQLException if the puzzle cannot be written.
+	 */
+	
+	static void addMinimal(BatchWriter minimalWriter, byte[] puzzle, byte[] solution, int givens) throws SQLException {
+		
+		PreparedStatement st = minimalWriter.statement(1);
+		st.setString(1, new String(puzzle, StandardCharsets.US_ASCII));
+		st.setString(2, new String(solution, StandardCharsets.US_ASCII));
+		st.setInt(3, givens);
+		minimalWriter.add(1);
+	}
+	
+	/**
+	 * Add the records of the current seed not stored yet, if any, to the batch of its level as one row.
+	 */
+	
+	private void flushChunk() throws SQLException {
+		
+		if (chunk == null || chunk.position() == 0) {
+			return;
+		}
+		PreparedStatement st = writer.statement(level);
+		byte[] records = Arrays.copyOf(chunk.array(), chunk.position());
+		if (STORAGE.equals("packed")) {
+			st.setString(1, rating);
+			st.setBytes(2, records);
+		} else {
+			st.setInt(1, seedId);
+			st.setInt(2, chunkNumber);
+			st.setBytes(3, records);
+		}
+		writer.add(level);
+		chunkNumber++;
+		chunk.clear();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		
+		try {
+			if (minimalWriter != null) {
+				minimalWriter.close(); // before the writer, which restores the autocommit setting of the connection
+			}
+			if (COPY) {
+				loader.close();
+			} else {
+				flushChunk();
+				writer.close();
+			}
+			finalBytes = tableBytes();
+			conn.close();
+		} catch (SQLException e) {
+			throw new IOException("Could not store the last puzzles", e);
+		}
+	}
+	
+	/**
+	 * @return Summary of the writer or the loader, and, once closed, of the space taken on disk.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		if (minimalWriter != null) {
+			return minimalWriter.toString();
+		}
+		String summary = COPY ? loader.toString() : writer.toString();
+		if (finalBytes < 0) {
+			return summary;
+		}
+		long bytes = finalBytes-initialBytes;
+		return String.format("%s%n%s storage: %d puzzles took %d bytes on disk (%.1f bytes per puzzle)",
+				summary, STORAGE, puzzles, bytes, bytes/(double) Math.max(puzzles, 1));
+	}
+}
@@ -0,0 +1,239 @@
+package SudokuSolver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary formats for the puzzles, instead of the 90-character strings of the {@code Puzzle} and
+ * {@code PuzzleSol} columns (about 180 bytes per puzzle):
+ * <ul>
+ * <li>A packed record of {@code RECORD_BYTES} (52) bytes holding a puzzle and its solution: the 81 numbers
+ * of the solution at 4 bits each (41 bytes), followed by a mask of the 81 cells that are givens of the puzzle
+ * (11 bytes).</li>
+ * <li>A derived record of {@code INDEX_BYTES} (6) bytes for a propagated copy: the index of the
+ * transformation that gives the copy from its seed (see {@link PuzzleTransform}), from which the full grids
+ * are rebuilt on read. The copies of a seed are stored together, next to the id of the seed.</li>
+ * </ul>
+ * Records are read and written at the position of a {@link ByteBuffer}, so that any number of them can be
+ * encoded or decoded in bulk into a single buffer; all multi-byte fields are little-endian.
+ *
+ * @author Nicols Moro
+ */
+
+class PuzzleCodec {
+	
+	static final int RECORD_BYTES = 52;
+	static final int INDEX_BYTES = 6; // the transformation index is below 2^41
+	
+	/**
+	 * @param records  Number of records (of either format) the buffer must hold.
+	 * @param recordBytes  {@code RECORD_BYTES} or {@code INDEX_BYTES}.
+	 * @return A new little-endian buffer for the records.
+	 */
+	
+	static ByteBuffer allocate(int records, int recordBytes) {
+		
+		return ByteBuffer.allocate(records*recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Write a packed record.
+	 *
+	 * @param puzzle  The puzzle as 81 cells (L -> R, T -> B), with 0 for the empty cells.
+	 * @param solution  Its solution, as 81 cells.
+	 * @param out  Little-endian buffer, with at least {@code RECORD_BYTES} remaining.
+	 */
+	
+	static void encode(int[] puzzle, int[] solution, ByteBuffer out) {
+		
+		encode(puzzle, solution, 0, out);
+	}
+	
+	/**
+	 * Write the packed record of the puzzle that starts at the given offset of the arrays.
+	 */
+	
+	private static void encode(int[] puzzle, int[] solution, int offset, ByteBuffer out) {
+		
+		// 16 numbers per long, then the last one on its own
+		for (int word=0; word<5; word++) {
+			long nibbles = 0;
+			for (int i=15; i>=0; i--) {
+				nibbles = nibbles << 4 | solution[offset + word*16+i];
+			}
+			out.putLong(nibbles);
+		}
+		out.put((byte) solution[offset+80]);
+		
+		long mask = 0;
+		for (int cell=63; cell>=0; cell--) {
+			mask = mask << 1 | (puzzle[offset+cell] != 0 ? 1 : 0);
+		}
+		int rest = 0;
+		for (int cell=80; cell>=64; cell--) {
+			rest = rest << 1 | (puzzle[offset+cell] != 0 ? 1 : 0);
+		}
+		out.putLong(mask);
+		out.putShort((short) rest);
+		out.put((byte) (rest >>> 16));
+	}
+	
+	/**
+	 * Same as {@link #encode(int[], int[], ByteBuffer)}, for 2D (9x9) grids.
+	 *
+	 * @return A new array holding the packed record.
+	 */
+	
+	static byte[] encode(int[][] puzzle, int[][] solution) {
+		
+		int[] puzzleCells = new int[81];
+		int[] solutionCells = new int[81];
+		for (int cell=0; cell<81; cell++) {
+			puzzleCells[cell] = puzzle[cell/9][cell%9];
+			solutionCells[cell] = solution[cell/9][cell%9];
+		}
+		ByteBuffer record = allocate(1, RECORD_BYTES);
+		encode(puzzleCells, solutionCells, record);
+		return record.array();
+	}
+	
+	/**
+	 * Same as {@link #encode(int[], int[], ByteBuffer)}, for a copy encoded as the strings of the database
+	 * (see {@link SeedPropagator}).
+	 */
+	
+	static void encode(byte[] puzzle, byte[] solution, ByteBuffer out) {
+		
+		for (int word=0; word<5; word++) {
+			long nibbles = 0;
+			for (int i=15; i>=0; i--) {
+				int cell = word*16+i;
+				nibbles = nibbles << 4 | (solution[cell/9*10 + cell%9]-'0');
+			}
+			out.putLong(nibbles);
+		}
+		out.put((byte) (solution[88]-'0'));
+		
+		long mask = 0;
+		for (int cell=63; cell>=0; cell--) {
+			mask = mask << 1 | (puzzle[cell/9*10 + cell%9] != '0' ? 1 : 0);
+		}
+		int rest = 0;
+		for (int cell=80; cell>=64; cell--) {
+			rest = rest << 1 | (puzzle[cell/9*10 + cell%9] != '0' ? 1 : 0);
+		}
+		out.putLong(mask);
+		out.putShort((short) rest);
+		out.put((byte) (rest >>> 16));
+	}
+	
+	/**
+	 * Read a packed record.
+	 *
+	 * @param in  Little-endian buffer positioned at the record.
+	 * @param puzzle  Array of 81 cells to be overwritten with the puzzle.
+	 * @param solution  Array of 81 cells to be overwritten with the solution.
+	 */
+	
+	static void decode(ByteBuffer in, int[] puzzle, int[] solution) {
+		
+		decode(in, puzzle, solution, 0);
+	}
+	
+	/**
+	 * Read a packed record into the given offset of the arrays.
+	 */
+	
+	private static void decode(ByteBuffer in, int[] puzzle, int[] solution, int offset) {
+		
+		for (int word=0; word<5; word++) {
+			long nibbles = in.getLong();
+			for (int i=0; i<16; i++) {
+				solution[offset + word*16+i] = (int) (nibbles & 0xF);
+				nibbles >>>= 4;
+			}
+		}
+		solution[offset+80] = in.get();
+		
+		long mask = in.getLong();
+		int rest = (in.getShort() & 0xFFFF) | (in.get() & 0xFF) << 16;
+		for (int cell=0; cell<64; cell++) {
+			puzzle[offset+cell] = (mask >>> cell & 1) != 0 ? solution[offset+cell] : 0;
+		}
+		for (int cell=64; cell<81; cell++) {
+			puzzle[offset+cell] = (rest >>> (cell-64) & 1) != 0 ? solution[offset+cell] : 0;
+		}
+	}
+	
+	/**
+	 * Write many packed records at once.
+	 *
+	 * @param puzzles  The puzzles, 81 cells each, one after another.
+	 * @param solutions  Their solutions, likewise.
+	 * @param count  Number of puzzles.
+	 * @param out  Little-endian buffer, with at least {@code count*RECORD_BYTES} remaining.
+	 */
+	
+	static void encodeAll(int[] puzzles, int[] solutions, int count, ByteBuffer out) {
+		
+		for (int i=0; i<count; i++) {
+			encode(puzzles, solutions, i*81, out);
+		}
+	}
+	
+	/**
+	 * Read many packed records at once.
+	 *
+	 * @param in  Little-endian buffer positioned at the first record.
+	 * @param puzzles  Array to be overwritten with the puzzles, 81 cells each, one after another.
+	 * @param solutions  Array to be overwritten with their solutions, likewise.
+	 * @param count  Number of records to be read.
+	 */
+	
+	static void decodeAll(ByteBuffer in, int[] puzzles, int[] solutions, int count) {
+		
+		for (int i=0; i<count; i++) {
+			decode(in, puzzles, solutions, i*81);
+		}
+	}
+	
+	/**
+	 * Write a derived record.
+	 *
+	 * @param index  Index of the transformation that gives the copy, from 0 to {@code PuzzleTransform.GROUP_SIZE-1}.
+	 * @param out  Little-endian buffer, with at least {@code INDEX_BYTES} remaining.
+	 */
+	
+	static void encodeIndex(long index, ByteBuffer out) {
+		
+		out.putInt((int) index);
+		out.putShort((short) (index >>> 32));
+	}
+	
+	/**
+	 * Read a derived record, i.e., the transformation index of a copy.
+	 */
+	
+	static long readIndex(ByteBuffer in) {
+		
+		return (in.getInt() & 0xFFFFFFFFL) | (long) (in.getShort() & 0xFFFF) << 32;
+	}
+	
+	/**
+	 * Rebuild a copy from its seed.
+	 *
+	 * @param seedPuzzle  The seed puzzle as 81 cells, e.g., decoded from its packed record.
+	 * @param seedSolution  Its solution.
+	 * @param index  Index of the transformation of the copy.
+	 * @param transform  Transformation to be reused for the computation.
+	 * @param puzzle  Array of 81 cells to be overwritten with the puzzle of the copy.
+	 * @param solution  Array of 81 cells to be overwritten with its solution.
+	 */
+	
+	static void derive(int[] seedPuzzle, int[] seedSolution, long index, PuzzleTransform transform, int[] puzzle, int[] solution) {
+		
+		transform.unrank(index);
+		transform.apply(seedPuzzle, puzzle);
+		transform.apply(seedSolution, solution);
+	}
+}
@@ -0,0 +1,61 @@
+package SudokuSolver;
+
+import java.io.IOException;
+
+/**
+ * Destination of the propagated puzzles, so that {@link Main} can generate into the PostgreSQL database, onto
+ * local files or into an embedded database without knowing which (see {@link SinkType}). The copies of each
+ * seed are given one after another, after the seed itself. The minimal puzzles (see {@link MinimalPuzzleMiner})
+ * have no seed and are stored apart from the levels, along with their number of givens.
+ * <p>
+ * Sinks buffer the puzzles and write them in chunks of {@code CHUNK_BYTES} bytes (or in batches, for the
+ * databases), and are not meant to be shared by threads.
+ *
+ * @author Nicols Moro
+ */
+
+interface PuzzleSink extends AutoCloseable {
+	
+	int CHUNK_BYTES = Integer.getInteger("sudoku.sinkChunk", 1 << 20); // can be set from the command line
+	
+	/**
+	 * Start a new seed; the copies added next are propagated from it.
+	 *
+	 * @param seed  The seed puzzle.
+	 * @param rating  Its rating as stored in the database, shared by all its copies.
+	 * @throws IOException if the seed cannot be written.
+	 */
+	
+	void startSeed(SeedGenerator.Seed seed, String rating) throws IOException;
+	
+	/**
+	 * Add a propagated copy of the current seed.
+	 *
+	 * @param puzzle  The encoded puzzle (see {@link SeedPropagator}). The array may be overwritten once this returns.
+	 * @param solution  The encoded solution, likewise.
+	 * @param index  Index of the transformation that gives the copy from the seed (see {@link PuzzleTransform}).
+	 * @throws IOException if the copy cannot be written.
+	 */
+	
+	void add(byte[] puzzle, byte[] solution, long index) throws IOException;
+	
+	/**
+	 * Add a minimal puzzle.
+	 *
+	 * @param puzzle  The encoded puzzle, as in {@link #add}.
+	 * @param solution  The encoded solution.
+	 * @param givens  Number of givens of the puzzle.
+	 * @throws IOException if the puzzle cannot be written.
+	 */
+	
+	void addMinimal(byte[] puzzle, byte[] solution, int givens) throws IOException;
+	
+	/**
+	 * Write the puzzles still buffered and release the sink.
+	 *
+	 * @throws IOException if the puzzles cannot be written.
+	 */
+	
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,239 @@
+package SudokuSolver;
+
+/**
+ * A transformation of the group that maps every valid Sudoku grid to another valid grid and every puzzle with
+ * a unique solution to another one with the same difficulty: any permutation of the 3 bands and of the rows
+ * within each band, any permutation of the 3 stacks and of the columns within each stack, an optional
+ * transposition and any relabeling of the 9 numbers. The group has 6^8 * 2 * 9! = 1,218,998,108,160
+ * elements, far more than the {@code 4*3*6*9!} copies enumerated by {@link Main}, and covers them all (e.g.,
+ * a rotation is a transposition followed by reversing the order of the columns).
+ * <p>
+ * Each transformation is addressed by an index from 0 to {@code GROUP_SIZE-1}, read as a number in a mixed
+ * radix: the lowest digit is the relabeling, ranked by its Lehmer code (9! values), followed by the column
+ * permutation within each stack, the stack permutation, the row permutation within each band and the band
+ * permutation (6 values each) and the transposition (2 values). Index 0 is the identity. {@link #unrank}
+ * takes a fixed number of steps, so any copy in the family of a seed can be derived from (seed, index) on
+ * demand, without walking the enumeration.
+ * <p>
+ * Different indices give different transformations, although they may give the same copy of a puzzle that
+ * is symmetric under some of them.
+ *
+ * @author Nicols Moro
+ */
+
+class PuzzleTransform {
+	
+	static final int RELABELINGS = 362880; // 9!
+	static final int GEOMETRIES = 2*6*6*6*6*6*6*6*6; // row, column and transposition moves: 3,359,232
+	static final long GROUP_SIZE = (long) GEOMETRIES*RELABELINGS; // 1,218,998,108,160
+	
+	// The 6 permutations of {0,1,2}, in lexicographic order; the first one is the identity
+	private static final int[][] PERMS3 = {{0,1,2}, {0,2,1}, {1,0,2}, {1,2,0}, {2,0,1}, {2,1,0}};
+	private static final int[] FACTORIAL = {1, 1, 2, 6, 24, 120, 720, 5040, 40320, 362880};
+	private static final byte[] NTH_NUMBER = new byte[512*9]; // k-th smallest number (from 1) in each 9-bit mask of numbers
+	
+	static {
+		for (int mask=0; mask<512; mask++) {
+			int k = 0;
+			for (int num=1; num<=9; num++) {
+				if ((mask & (1 << (num-1))) != 0) {
+					NTH_NUMBER[mask*9 + k++] = (byte) num;
+				}
+			}
+		}
+	}
+	
+	final int[] rowOf = new int[9]; // row of the original grid moved to each row, before the transposition
+	final int[] colOf = new int[9]; // likewise for the columns
+	boolean transposed;
+	final int[] relabel = new int[10]; // new number of each number; 0 (empty) stays 0
+	final int[] cellOf = new int[81]; // cell of the original grid moved to each cell
+	
+	private long index;
+	
+	/**
+	 * Create the identity transformation.
+	 */
+	
+	PuzzleTransform() {
+		
+		unrank(0);
+	}
+	
+	/**
+	 * @param index  Index of the transformation, from 0 to {@code GROUP_SIZE-1}.
+	 * @return A new transformation with the given index.
+	 */
+	
+	static PuzzleTransform of(long index) {
+		
+		PuzzleTransform transform = new PuzzleTransform();
+		transform.unrank(index);
+		return transform;
+	}
+	
+	/**
+	 * Turn this transformation into the one with the given index. No memory is allocated.
+	 *
+	 * @param index  Index of the transformation, from 0 to {@code GROUP_SIZE-1}.
+	 * @throws IllegalArgumentException if the index is out of range.
+	 */
+	
+	void unrank(long index) {
+		
+		if (index < 0 || index >= GROUP_SIZE) {
+			throw new IllegalArgumentException("Transformation index out of range: "+index);
+		}
+		this.index = index;
+		
+		// Relabeling: the k-th digit of the Lehmer code picks the new number of k+1 among the ones still unused
+		int code = (int) (index % RELABELINGS);
+		int geometry = (int) (index / RELABELINGS); // below 2^22
+		int unused = BoardState.ALL_DIGITS;
+		for (int num=1; num<=9; num++) {
+			int rank = code / FACTORIAL[9-num];
+			code %= FACTORIAL[9-num];
+			int label = NTH_NUMBER[unused*9 + rank];
+			unused &= ~(1 << (label-1));
+			relabel[num] = label;
+		}
+		relabel[0] = 0;
+		
+		// Columns within each stack, then the stacks
+		int[] stacks = PERMS3[geometry / 216 % 6];
+		for (int stack=0; stack<3; stack++) {
+			int[] cols = PERMS3[geometry % 6];
+			geometry /= 6;
+			for (int i=0; i<3; i++) {
+				colOf[3*stack+i] = 3*stacks[stack] + cols[i];
+			}
+		}
+		geometry /= 6;
+		
+		// Rows within each band, then the bands
+		int[] bands = PERMS3[geometry / 216 % 6];
+		for (int band=0; band<3; band++) {
+			int[] rows = PERMS3[geometry % 6];
+			geometry /= 6;
+			for (int i=0; i<3; i++) {
+				rowOf[3*band+i] = 3*bands[band] + rows[i];
+			}
+		}
+		geometry /= 6;
+		
+		transposed = geometry == 1;
+		for (int r=0; r<9; r++) {
+			for (int c=0; c<9; c++) {
+				cellOf[r*9+c] = transposed ? rowOf[c]*9 + colOf[r] : rowOf[r]*9 + colOf[c];
+			}
+		}
+	}
+	
+	/**
+	 * @return The index of this transformation.
+	 */
+	
+	long getIndex() {
+		
+		return index;
+	}
+	
+	/**
+	 * Compute the index of this transformation from its maps, i.e., the inverse of {@link #unrank}.
+	 *
+	 * @return The index, from 0 to {@code GROUP_SIZE-1}.
+	 */
+	
+	long rank() {
+		
+		long geometry = transposed ? 1 : 0;
+		geometry = geometry*6 + rankPerm3(rowOf[0]/3, rowOf[3]/3, rowOf[6]/3);
+		for (int band=2; band>=0; band--) {
+			geometry = geometry*6 + rankPerm3(rowOf[3*band]%3, rowOf[3*band+1]%3, rowOf[3*band+2]%3);
+		}
+		geometry = geometry*6 + rankPerm3(colOf[0]/3, colOf[3]/3, colOf[6]/3);
+		for (int stack=2; stack>=0; stack--) {
+			geometry = geometry*6 + rankPerm3(colOf[3*stack]%3, colOf[3*stack+1]%3, colOf[3*stack+2]%3);
+		}
+		
+		int code = 0;
+		int unused = BoardState.ALL_DIGITS;
+		for (int num=1; num<=9; num++) {
+			int bit = 1 << (relabel[num]-1);
+			code += Integer.bitCount(unused & (bit-1)) * FACTORIAL[9-num];
+			unused &= ~bit;
+		}
+		return geometry*RELABELINGS + code;
+	}
+	
+	/**
+	 * Rank a relabeling given by its labels as characters, i.e., the lowest digit of the index of a
+	 * transformation with that relabeling.
+	 *
+	 * @param labels  The new number of each number from 1 to 9, as the characters '1' to '9'.
+	 * @return The Lehmer code of the relabeling, from 0 to {@code RELABELINGS-1}.
+	 */
+	
+	static int rankRelabeling(byte[] labels) {
+		
+		int code = 0;
+		int unused = BoardState.ALL_DIGITS;
+		for (int num=1; num<=9; num++) {
+			int bit = 1 << (labels[num-1]-'1');
+			code += Integer.bitCount(unused & (bit-1)) * FACTORIAL[9-num];
+			unused &= ~bit;
+		}
+		return code;
+	}
+	
+	private static int rankPerm3(int a, int b, int c) {
+		
+		for (int p=0; p<6; p++) {
+			if (PERMS3[p][0] == a && PERMS3[p][1] == b && PERMS3[p][2] == c) {
+				return p;
+			}
+		}
+		throw new IllegalStateException("Not a permutation: "+a+", "+b+", "+c);
+	}
+	
+	/**
+	 * Write the transformed copy of a grid into another one.
+	 *
+	 * @param grid  A 2D (9x9) grid, either a puzzle (empty cells are filled by 0) or its solution.
+	 * @param target  A 2D (9x9) array to be overwritten; it must not be the same as {@code grid}.
+	 */
+	
+	void apply(int[][] grid, int[][] target) {
+		
+		for (int cell=0; cell<81; cell++) {
+			int source = cellOf[cell];
+			target[cell/9][cell%9] = relabel[grid[source/9][source%9]];
+		}
+	}
+	
+	/**
+	 * Same as {@link #apply(int[][], int[][])}, for grids stored as 81 cells (L -> R, T -> B).
+	 */
+	
+	void apply(int[] cells, int[] target) {
+		
+		for (int cell=0; cell<81; cell++) {
+			target[cell] = relabel[cells[cellOf[cell]]];
+		}
+	}
+	
+	/**
+	 * Derive a copy in the family of a seed on demand.
+	 *
+	 * @param seed  The seed puzzle or its solution, as a 2D (9x9) grid.
+	 * @param index  Index of the transformation, from 0 to {@code GROUP_SIZE-1}.
+	 * @return The transformed copy, as a new grid.
+	 */
+	
+	static int[][] derive(int[][] seed, long index) {
+		
+		int[][] copy = new int[9][9];
+		of(index).apply(seed, copy);
+		return copy;
+	}
+}
@@ -0,0 +1,497 @@
+package SudokuSolver;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Audits the puzzles already stored in the database by {@link Main}: every {@code Puzzle} must have exactly
+ * one solution, and it must be the one stored in {@code PuzzleSol}. The tables are streamed through a
+ * server-side cursor, so that only {@code FETCH_SIZE} rows are held by the driver at once, and the rows are
+ * verified in parallel by one worker per core. Each worker first screens a whole batch at once (see
+ * {@link GridBatch}): the stored solutions must follow the rules, and a puzzle whose givens repeat a number, or
+ * leave an empty cell without candidates, has no solution and needs no search. Any row that fails the check is
+ * written to a CSV report.
+ * If a worker fails, the reader stops and the failure is thrown, instead of leaving rows unverified.
+ * <p>
+ * The tables read are those of the storage format given by {@code sudoku.storage} (see {@link PostgresSink}):
+ * the strings of {@code level<N>}, the packed records of {@code level<N>_packed}, or the copies of
+ * {@code level<N>_derived}, which are rebuilt from their seeds (see {@link PuzzleCodec}); the seeds are
+ * loaded in memory first. The chunks of the binary formats are split into their records, each reported as
+ * {@code chunk_id:offset} or {@code seed:chunk:offset}; a chunk whose length is not a whole number of records
+ * is reported once, as malformed.
+ * <p>
+ * The fetch size and the report file can be set from the command line, e.g.
+ * {@code -Dsudoku.fetchSize=50000 -Dsudoku.verifyReport=report.csv}.
+ *
+ * @author Nicols Moro
+ */
+
+class PuzzleVerifier {
+	
+	private static final int FETCH_SIZE = Integer.getInteger("sudoku.fetchSize", 10000); // rows per round trip of the cursor
+	private static final String REPORT_FILE = System.getProperty("sudoku.verifyReport", "verification_report.csv");
+	private static final int BATCH_SIZE = 1000; // rows handed to a worker at once
+	private static final long NODES_PER_PUZZLE = 1000000; // search budget of each check
+	
+	/**
+	 * Puzzles read from one table, waiting to be verified. A batch with no level marks the end of the stream.
+	 */
+	
+	private static class Batch {
+		
+		static final Batch END = new Batch(0);
+		
+		final int level;
+		final long[] ids = new long[BATCH_SIZE]; // puzzle_id, chunk_id or seed_id
+		final String[] puzzles = new String[BATCH_SIZE]; // text storage
+		final String[] solutions = new String[BATCH_SIZE];
+		final byte[][] chunks = new byte[BATCH_SIZE][]; // binary storage: the chunk of each puzzle, shared by its records
+		final int[] chunkNumbers = new int[BATCH_SIZE]; // derived storage
+		final int[] offsets = new int[BATCH_SIZE]; // of the record in its chunk
+		int size = 0;
+		
+		Batch(int level) {
+			
+			this.level = level;
+		}
+	}
+	
+	/**
+	 * Decodes the rows of the batches into grids, in the storage format given by {@code STORAGE}. One per worker.
+	 */
+	
+	private static class RowDecoder {
+		
+		private final Map<Integer, int[][]> seeds; // puzzle and solution of each seed (81 cells), by id
+		private final PuzzleTransform transform = new PuzzleTransform();
+		private final int[] puzzleCells = new int[81];
+		private final int[] solutionCells = new int[81];
+		
+		RowDecoder(Map<Integer, int[][]> seeds) {
+			
+			this.seeds = seeds;
+		}
+		
+		/**
+		 * @param batch  Rows read from the database.
+		 * @param i  Index of the row in the batch.
+		 * @param puzzle  A 2D (9x9) array to be overwritten with the puzzle.
+		 * @param solution  A 2D (9x9) array to be overwritten with the solution.
+		 * @return Null if the row was decoded; otherwise, a short description of the problem.
+		 */
+		
+		String decode(Batch batch, int i, int[][] puzzle, int[][] solution) {
+			
+			switch (PostgresSink.STORAGE) {
+				case "packed":
+					if (!isWellFormed(batch.chunks[i], PuzzleCodec.RECORD_BYTES)) {
+						return "MALFORMED";
+					}
+					ByteBuffer records = ByteBuffer.wrap(batch.chunks[i]).order(ByteOrder.LITTLE_ENDIAN);
+					records.position(batch.offsets[i]*PuzzleCodec.RECORD_BYTES);
+					PuzzleCodec.decode(records, puzzleCells, solutionCells);
+					break;
+				case "derived":
+					int[][] seed = seeds.get((int) batch.ids[i]);
+					if (seed == null) {
+						return "MISSING_SEED";
+					}
+					if (!isWellFormed(batch.chunks[i], PuzzleCodec.INDEX_BYTES)) {
+						return "MALFORMED";
+					}
+					ByteBuffer indexes = ByteBuffer.wrap(batch.chunks[i]).order(ByteOrder.LITTLE_ENDIAN);
+					indexes.position(batch.offsets[i]*PuzzleCodec.INDEX_BYTES);
+					long index = PuzzleCodec.readIndex(indexes);
+					if (index >= PuzzleTransform.GROUP_SIZE) {
+						return "MALFORMED";
+					}
+					PuzzleCodec.derive(seed[0], seed[1], index, transform, puzzleCells, solutionCells);
+					break;
+				default:
+					boolean wellFormed = convertStringToPuzzle(batch.puzzles[i], puzzle);
+					return convertStringToPuzzle(batch.solutions[i], solution) && wellFormed ? null : "MALFORMED";
+			}
+			return toGrid(puzzleCells, puzzle) && toGrid(solutionCells, solution) ? null : "MALFORMED";
+		}
+	}
+	
+	/**
+	 * Verify every puzzle stored in the tables of the 5 difficulty levels and print a summary.
+	 *
+	 * @param engine  Solver engine used to count the solutions of each puzzle.
+	 * @param numThreads  Number of worker threads verifying rows in parallel.
+	 * @throws SQLException when connection to the database fails.
+	 * @throws IOException when the report file cannot be created or written.
+	 * @throws InterruptedException if interrupted while waiting for the workers.
+	 * @throws IllegalStateException if a worker fails, or all of them stop, before every row has been verified.
+	 */
+	
+	static void verifyDB(SolverEngine engine, int numThreads) throws SQLException, IOException, InterruptedException {
+		
+		long startTime = System.currentTimeMillis();
+		System.out.println("Verifying the puzzles stored in the Database with "+numThreads+" threads...\n");
+		
+		// Bounded queue: the reader waits for the workers instead of loading whole tables in memory
+		BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(2*numThreads);
+		AtomicLong checkedRows = new AtomicLong();
+		AtomicLong failedRows = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // first error of a worker
+		boolean reportFailed;
+		
+		try (Connection conn = DriverManager.getConnection(DatabaseManagement.NEW_DB_URL, DatabaseManagement.USER, DatabaseManagement.PASS);
+				PrintWriter report = new PrintWriter(new BufferedWriter(new FileWriter(REPORT_FILE)))) {
+					
+			report.println("level,puzzle,problem");
+			Map<Integer, int[][]> seeds = PostgresSink.STORAGE.equals("derived") ? readSeeds(conn) : null;
+			
+			Thread[] workers = new Thread[numThreads];
+			for (int i=0; i<numThreads; i++) {
+				workers[i] = new Thread(() -> {
+					try {
+						verifyBatches(queue, engine, new RowDecoder(seeds), report, checkedRows, failedRows);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}, "verifier-"+i);
+				workers[i].start();
+			}
+			
+			boolean finished = false;
+			try {
+				conn.setAutoCommit(false); // PostgreSQL only uses a cursor (i.e., honours the fetch size) inside a transaction
+				
+				for (int level=1; level<=5; level++) {
+					try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+						
+						stmt.setFetchSize(FETCH_SIZE);
+						try (ResultSet rs = stmt.executeQuery(String.format(selectStatement(), level))) {
+							
+							Batch batch = new Batch(level);
+							while (rs.next()) {
+								long id = rs.getLong(1);
+								switch (PostgresSink.STORAGE) {
+									case "packed":
+									case "derived":
+										boolean derived = PostgresSink.STORAGE.equals("derived");
+										int chunkNumber = derived ? rs.getInt(2) : 0;
+										byte[] chunk = rs.getBytes(derived ? 3 : 2);
+										int recordBytes = derived ? PuzzleCodec.INDEX_BYTES : PuzzleCodec.RECORD_BYTES;
+										int records = isWellFormed(chunk, recordBytes) ? chunk.length/recordBytes : 1; // malformed chunks are reported once
+										for (int offset=0; offset<records; offset++) {
+											batch.ids[batch.size] = id;
+											batch.chunks[batch.size] = chunk;
+											batch.chunkNumbers[batch.size] = chunkNumber;
+											batch.offsets[batch.size] = offset;
+											batch = advance(queue, batch, workers, failure);
+										}
+										break;
+									default:
+										batch.ids[batch.size] = id;
+										batch.puzzles[batch.size] = rs.getString(2);
+										batch.solutions[batch.size] = rs.getString(3);
+										batch = advance(queue, batch, workers, failure);
+								}
+							}
+							if (batch.size > 0) {
+								handOver(queue, batch, workers, failure);
+							}
+						}
+					}
+					System.out.println("Level "+level+" read; "+checkedRows.get()+" puzzles verified so far");
+				}
+				conn.commit();
+				for (int i=0; i<numThreads; i++) {
+					handOver(queue, Batch.END, workers, failure);
+				}
+				finished = true;
+				
+			} finally {
+				// Stop the workers at once if reading failed
+				if (!finished) {
+					for (Thread worker : workers) {
+						worker.interrupt();
+					}
+				}
+				for (Thread worker : workers) {
+					worker.join();
+				}
+			}
+			reportFailed = report.checkError(); // PrintWriter never throws: flush and check whether every line was written
+		}
+		if (failure.get() != null) {
+			throw new IllegalStateException("A verifier worker failed", failure.get());
+		}
+		if (reportFailed) {
+			throw new IOException("Could not write the verification report to "+REPORT_FILE);
+		}
+		
+		long endTime = System.currentTimeMillis();
+		System.out.println("Finished in "+(endTime-startTime)+" ms. "+checkedRows.get()+" puzzles verified, "
+				+failedRows.get()+" problems written to "+REPORT_FILE+".");
+	}
+	
+	/**
+	 * @return The SELECT statement of the rows of a level in the format given by {@code STORAGE}, with {@code %d}
+	 * in place of the level.
+	 */
+	
+	private static String selectStatement() {
+		
+		switch (PostgresSink.STORAGE) {
+			case "packed":
+				return "SELECT chunk_id, Records FROM level%d_packed";
+			case "derived":
+				return "SELECT Seed, Chunk, Transforms FROM level%d_derived";
+			default:
+				return "SELECT puzzle_id, Puzzle, PuzzleSol FROM level%d";
+		}
+	}
+	
+	/**
+	 * @return True if the chunk holds a whole number of records, and at least one.
+	 */
+	
+	private static boolean isWellFormed(byte[] chunk, int recordBytes) {
+		
+		return chunk != null && chunk.length > 0 && chunk.length%recordBytes == 0;
+	}
+	
+	/**
+	 * @return How a puzzle of the batch is told apart in the report: its puzzle_id, or its chunk and offset.
+	 */
+	
+	private static String key(Batch batch, int i) {
+		
+		switch (PostgresSink.STORAGE) {
+			case "packed":
+				return batch.ids[i]+":"+batch.offsets[i];
+			case "derived":
+				return batch.ids[i]+":"+batch.chunkNumbers[i]+":"+batch.offsets[i];
+			default:
+				return Long.toString(batch.ids[i]);
+		}
+	}
+	
+	/**
+	 * Read every seed of the derived storage. Seeds whose record is malformed are left out, so their copies are
+	 * reported as missing their seed.
+	 *
+	 * @param conn  Connection to the database.
+	 * @return The puzzle and the solution of each seed, as 81 cells, by id.
+	 * @throws SQLException when the table cannot be read.
+	 */
+	
+	private static Map<Integer, int[][]> readSeeds(Connection conn) throws SQLException {
+		
+		Map<Integer, int[][]> seeds = new HashMap<Integer, int[][]>();
+		try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("SELECT seed_id, Record FROM seeds")) {
+			while (rs.next()) {
+				byte[] record = rs.getBytes(2);
+				if (record != null && record.length == PuzzleCodec.RECORD_BYTES) {
+					int[][] seed = new int[2][81];
+					PuzzleCodec.decode(ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN), seed[0], seed[1]);
+					seeds.put(rs.getInt(1), seed);
+				}
+			}
+		}
+		System.out.println(seeds.size()+" seeds read");
+		return seeds;
+	}
+	
+	/**
+	 * Count the puzzle just filled in, and hand the batch over if it is full.
+	 *
+	 * @return The batch to fill next.
+	 */
+	
+	private static Batch advance(BlockingQueue<Batch> queue, Batch batch, Thread[] workers, AtomicReference<Throwable> failure) throws InterruptedException {
+		
+		if (++batch.size < BATCH_SIZE) {
+			return batch;
+		}
+		handOver(queue, batch, workers, failure);
+		return new Batch(batch.level);
+	}
+	
+	/**
+	 * Put a batch in the queue, waiting while it is full as long as the workers are alive.
+	 *
+	 * @throws IllegalStateException if a worker has failed or all of them have stopped.
+	 */
+	
+	private static void handOver(BlockingQueue<Batch> queue, Batch batch, Thread[] workers, AtomicReference<Throwable> failure) throws InterruptedException {
+		
+		do {
+			if (failure.get() != null) {
+				throw new IllegalStateException("A verifier worker failed", failure.get());
+			}
+			boolean alive = false;
+			for (Thread worker : workers) {
+				alive |= worker.isAlive();
+			}
+			if (!alive) {
+				throw new IllegalStateException("All the verifier workers have stopped");
+			}
+		} while (!queue.offer(batch, 1, TimeUnit.SECONDS));
+	}
+	
+	/**
+	 * Worker loop: verify the batches in the queue until the end of the stream is reached, or the worker is interrupted.
+	 *
+	 * @param queue  Batches read from the database.
+	 * @param engine  Solver engine used to count the solutions; each worker uses its own solver.
+	 * @param decoder  Decoder of the rows, owned by the calling thread.
+	 * @param report  Destination of the rows that fail the check.
+	 * @param checkedRows  Counter of verified rows.
+	 * @param failedRows  Counter of rows that failed the check.
+	 */
+	
+	private static void verifyBatches(BlockingQueue<Batch> queue, SolverEngine engine, RowDecoder decoder, PrintWriter report,
+			AtomicLong checkedRows, AtomicLong failedRows) {
+		
+		Solver solver = engine.forCurrentThread();
+		GridBatch grids = new GridBatch(BATCH_SIZE); // the stored solutions
+		boolean[] validSolutions = new boolean[BATCH_SIZE];
+		GridBatch puzzleGrids = new GridBatch(BATCH_SIZE);
+		boolean[] validPuzzles = new boolean[BATCH_SIZE];
+		int[] candidates = new int[81*BATCH_SIZE];
+		String[] problems = new String[BATCH_SIZE]; // found while decoding
+		int[][][] puzzles = new int[BATCH_SIZE][9][9]; // decoded once, kept for the search
+		int[][][] solutions = new int[BATCH_SIZE][9][9];
+		
+		try {
+			Batch batch = queue.take();
+			while (batch != Batch.END) {
+				
+				// Check the rules on all the stored solutions of the batch at once
+				grids.clear();
+				puzzleGrids.clear();
+				for (int i=0; i<batch.size; i++) {
+					problems[i] = decoder.decode(batch, i, puzzles[i], solutions[i]); // Malformed rows are reported below
+					grids.add(solutions[i]);
+					puzzleGrids.add(puzzles[i]);
+				}
+				grids.validate(validSolutions);
+				
+				// Rule out the puzzles that cannot be completed (a repeated given, or an empty cell without candidates) without searching
+				puzzleGrids.validate(validPuzzles);
+				puzzleGrids.computeCandidates(candidates);
+				
+				for (int i=0; i<batch.size; i++) {
+					String problem = problems[i];
+					if (problem == null && (!validPuzzles[i] || puzzleGrids.hasDeadCell(candidates, i))) {
+						problem = "NO_SOLUTION";
+					} else if (problem == null) {
+						problem = verifyPuzzle(puzzles[i], solutions[i], validSolutions[i], solver);
+					}
+					if (problem != null) {
+						report.println(batch.level+","+key(batch, i)+","+problem);
+						failedRows.incrementAndGet();
+					}
+				}
+				checkedRows.addAndGet(batch.size);
+				batch = queue.take();
+			}
+		} catch (InterruptedException e) {
+			// Stopped by the reader, which failed
+		}
+	}
+	
+	/**
+	 * Check that a decoded puzzle has exactly one solution and that it is the given one.
+	 * Since a valid solution that agrees with all the givens is a solution of the puzzle, this
+	 * only takes a single search that stops as soon as a second solution is found.
+	 *
+	 * @param puzzle  2D (9x9) array with the puzzle, as decoded from the database.
+	 * @param solution  2D (9x9) array with its stored solution.
+	 * @param validSolution  Whether the solution follows the rules, as checked by {@link GridBatch#validate}.
+	 * @param solver  Solver of the calling thread.
+	 * @return Null if the row is correct; otherwise, a short description of the problem.
+	 */
+	
+	static String verifyPuzzle(int[][] puzzle, int[][] solution, boolean validSolution, Solver solver) {
+		
+		// The stored solution must also be full and keep all the givens of the puzzle
+		for (int r=0; r<=8 && validSolution; r++) {
+			for (int c=0; c<=8; c++) {
+				if (solution[r][c] == 0 || (puzzle[r][c] != 0 && puzzle[r][c] != solution[r][c])) {
+					validSolution = false;
+				}
+			}
+		}
+		
+		switch (solver.countSolutions(puzzle, 2, new SearchBudget(NODES_PER_PUZZLE, 0))) {
+			case -1:
+				return "BUDGET_EXHAUSTED";
+			case 0:
+				return "NO_SOLUTION";
+			case 2:
+				return "MULTIPLE_SOLUTIONS";
+			default:
+				return validSolution ? null : "WRONG_SOLUTION";
+		}
+	}
+	
+	/**
+	 * Decode a puzzle stored as a string, i.e., the digits of each row followed by a semicolon.
+	 *
+	 * @param encoded  String of 90 characters, as generated by {@link Main}.
+	 * @param grid  A 2D (9x9) array to be overwritten with the puzzle.
+	 * @return False if the string does not follow the expected format.
+	 */
+	
+	static boolean convertStringToPuzzle(String encoded, int[][] grid) {
+		
+		if (encoded == null || encoded.length() != 90) {
+			return false;
+		}
+		
+		int pos = 0;
+		for (int r=0; r<=8; r++) {
+			for (int c=0; c<=8; c++) {
+				char digit = encoded.charAt(pos++);
+				if (digit < '0' || digit > '9') {
+					return false;
+				}
+				grid[r][c] = digit - '0';
+			}
+			if (encoded.charAt(pos++) != ';') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Copy a grid stored as 81 cells (L -> R, T -> B) into a 2D (9x9) array.
+	 *
+	 * @return False if a cell holds anything but a number from 0 to 9.
+	 */
+	
+	private static boolean toGrid(int[] cells, int[][] grid) {
+		
+		boolean wellFormed = true;
+		for (int cell=0; cell<81; cell++) {
+			int num = cells[cell];
+			wellFormed &= num >= 0 && num <= 9;
+			grid[cell/9][cell%9] = num;
+		}
+		return wellFormed;
+	}
+}
@@ -0,0 +1,65 @@
+package SudokuSolver;
+
+import java.util.SplittableRandom;
+
+/**
+ * Source of all the randomness used to generate puzzles. Every run has a single run seed, from which an
+ * independent {@link SplittableRandom} is derived for each seed puzzle, identified by its level and its
+ * index within the level. The generator of a seed puzzle is used by one thread at a time and only for that
+ * seed (its terminal pattern, any retries, the digging order and the bounds on the givens), so the puzzles
+ * generated from a given run seed do not depend on the number of threads nor on the order in which the seeds
+ * are processed.
+ * <p>
+ * The run seed is random unless it is set from the command line, e.g. {@code -Dsudoku.runSeed=42}; it is
+ * printed at the start of every run so that the run can be reproduced.
+ *
+ * @author Nicols Moro
+ */
+
+class RandomStreams {
+	
+	static final long RUN_SEED = Long.getLong("sudoku.runSeed", new SplittableRandom().nextLong());
+	private static final long COPIES = 0x436F70696573L; // tells the generators of the copies apart from those of the seeds
+	
+	/**
+	 * Derive the generator of a seed puzzle from the run seed. The key is hashed rather than split off a
+	 * shared generator, since splitting depends on the order of the calls.
+	 *
+	 * @param runSeed  Seed of the whole run.
+	 * @param level  Level of difficulty of the seed puzzle, from 1 to 5, or {@link MinimalPuzzleMiner#STREAM}.
+	 * @param seed  Index of the seed puzzle within its level, from 1 on.
+	 * @return A new generator, to be used by a single thread.
+	 */
+	
+	static SplittableRandom forSeed(long runSeed, int level, long seed) {
+		
+		return new SplittableRandom(mix(mix(runSeed ^ level) ^ seed));
+	}
+	
+	/**
+	 * Derive the generator used to sample the copies of a seed puzzle (see {@link IndexPermutation}), which is
+	 * independent from the one the seed was generated with.
+	 *
+	 * @param runSeed  Seed of the whole run.
+	 * @param level  Level of difficulty of the seed puzzle, from 1 to 5.
+	 * @param seed  Index of the seed puzzle within its level, from 1 on.
+	 * @return A new generator, to be used by a single thread.
+	 */
+	
+	static SplittableRandom forCopies(long runSeed, int level, long seed) {
+		
+		return new SplittableRandom(mix(mix(mix(runSeed ^ level) ^ seed) ^ COPIES));
+	}
+	
+	/**
+	 * Final mixing step of SplitMix64, so that keys differing in a single bit give unrelated generators.
+	 */
+	
+	static long mix(long z) {
+		
+		z = (z + 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
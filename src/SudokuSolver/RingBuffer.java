@@ -0,0 +1,119 @@
+package SudokuSolver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for several producer and consumer threads, after D. Vyukov's array-based design.
+ * Every slot carries a sequence number that tells whether it is ready to be written (for the lap of the
+ * producers) or read (for the lap of the consumers), so that a thread only needs one compare-and-set on
+ * the shared head or tail to claim a slot. Neither {@link #offer} nor {@link #poll} ever blocks: they fail
+ * at once if the queue is full or empty, respectively.
+ *
+ * @see <a href="https://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue">Bounded MPMC queue (D. Vyukov)</a>.
+ *
+ * @author Nicols Moro
+ */
+
+class RingBuffer<E> {
+	
+	private final int mask;
+	private final Object[] buffer;
+	private final AtomicLongArray sequence;
+	private final AtomicLong tail = new AtomicLong(); // next position to be written
+	private final AtomicLong head = new AtomicLong(); // next position to be read
+	
+	/**
+	 * @param capacity  Maximum number of elements; must be a power of 2.
+	 * @throws IllegalArgumentException if the capacity is not a power of 2.
+	 */
+	
+	RingBuffer(int capacity) {
+		
+		if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of 2: "+capacity);
+		}
+		this.mask = capacity-1;
+		this.buffer = new Object[capacity];
+		this.sequence = new AtomicLongArray(capacity);
+		for (int i=0; i<capacity; i++) {
+			sequence.set(i, i);
+		}
+	}
+	
+	/**
+	 * Add an element at the tail of the queue, if there is room for it.
+	 *
+	 * @param element  Element to be added (not null).
+	 * @return False if the queue is full.
+	 */
+	
+	boolean offer(E element) {
+		
+		long pos = tail.get();
+		while (true) {
+			int index = (int) pos & mask;
+			long lag = sequence.get(index) - pos;
+			if (lag == 0) {
+				if (tail.compareAndSet(pos, pos+1)) {
+					buffer[index] = element;
+					sequence.set(index, pos+1); // Publishes the element to the consumers
+					return true;
+				}
+				pos = tail.get();
+			} else if (lag < 0) {
+				return false; // The slot still holds an element from the previous lap
+			} else {
+				pos = tail.get(); // Another producer claimed this position
+			}
+		}
+	}
+	
+	/**
+	 * Remove the element at the head of the queue, if any.
+	 *
+	 * @return The element, or null if the queue is empty.
+	 */
+	
+	@SuppressWarnings("unchecked")
+	E poll() {
+		
+		long pos = head.get();
+		while (true) {
+			int index = (int) pos & mask;
+			long lag = sequence.get(index) - (pos+1);
+			if (lag == 0) {
+				if (head.compareAndSet(pos, pos+1)) {
+					E element = (E) buffer[index];
+					buffer[index] = null;
+					sequence.set(index, pos+mask+1); // Frees the slot for the next lap of the producers
+					return element;
+				}
+				pos = head.get();
+			} else if (lag < 0) {
+				return null; // The slot has not been written yet
+			} else {
+				pos = head.get(); // Another consumer claimed this position
+			}
+		}
+	}
+	
+	/**
+	 * @return Approximate number of elements in the queue, since other threads may be using it concurrently.
+	 */
+	
+	int size() {
+		
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, mask+1));
+	}
+	
+	/**
+	 * @return Maximum number of elements.
+	 */
+	
+	int capacity() {
+		
+		return mask+1;
+	}
+}
@@ -0,0 +1,81 @@
+package SudokuSolver;
+
+/**
+ * Limits the amount of work spent on one or several searches. The main limit is a number of search nodes,
+ * which does not depend on the machine or its load, so that runs can be reproduced; a coarse deadline
+ * measured with {@link System#nanoTime()} acts as a safety net and is only read every {@code CHECK_INTERVAL} nodes.
+ * <p>
+ * A budget can be shared by nested searches (e.g., all the uniqueness checks made while digging one puzzle),
+ * in which case they all draw from the same counter. Budgets are not meant to be shared by threads.
+ *
+ * @author Nicols Moro
+ */
+
+class SearchBudget {
+	
+	static final int CHECK_INTERVAL = 1024; // Search nodes between two reads of the clock (a power of 2)
+	static final SearchBudget UNLIMITED = new SearchBudget(0, 0);
+	
+	private final boolean limited;
+	private final long maxNodes;
+	private final long deadline;
+	private final boolean hasDeadline;
+	
+	private long nodes = 0;
+	private boolean exhausted = false;
+	
+	/**
+	 * @param maxNodes  Maximum number of search nodes. If set to 0, the number of nodes is not bounded.
+	 * @param timeLimit  Maximum time in nanoseconds from now. If set to 0, there is no deadline.
+	 */
+	
+	SearchBudget(long maxNodes, long timeLimit) {
+		
+		this.maxNodes = maxNodes;
+		this.hasDeadline = timeLimit > 0;
+		this.deadline = hasDeadline ? System.nanoTime() + timeLimit : 0;
+		this.limited = maxNodes > 0 || hasDeadline;
+	}
+	
+	/**
+	 * Count one more search node and check whether the budget still allows it.
+	 *
+	 * @return False if the budget has been exhausted, in which case the search should stop.
+	 */
+	
+	boolean tick() {
+		
+		if (!limited) {
+			return true;
+		}
+		if (exhausted) {
+			return false;
+		}
+		
+		nodes++;
+		if (maxNodes > 0 && nodes > maxNodes) {
+			exhausted = true;
+		} else if (hasDeadline && (nodes & (CHECK_INTERVAL-1)) == 0 && System.nanoTime()-deadline >= 0) {
+			exhausted = true;
+		}
+		return !exhausted;
+	}
+	
+	/**
+	 * @return True once a search has run out of nodes or time with this budget.
+	 */
+	
+	boolean isExhausted() {
+		
+		return exhausted;
+	}
+	
+	/**
+	 * @return Number of search nodes counted so far (always 0 for {@link #UNLIMITED}).
+	 */
+	
+	long getNodes() {
+		
+		return nodes;
+	}
+}
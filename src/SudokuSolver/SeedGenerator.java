@@ -0,0 +1,222 @@
+package SudokuSolver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generates the seed puzzles of all the levels in parallel. Each worker thread asks the {@link LevelScheduler}
+ * for the level of its next seed, takes that seed from the {@link PatternPool}, digs it with its own
+ * {@link GeneratingAlgorithm} (retrying with a new terminal pattern if the digging fails even after resuming
+ * from its checkpoints), grades it and hands the result over through a bounded queue, from which the seeds
+ * are propagated and stored by a single thread. Since the randomness of every seed comes from its own
+ * generator (see {@link RandomStreams}), the seeds obtained do not depend on the number of workers; only the
+ * order in which they are handed over does (and, if the run has a deadline, how many of them are dug).
+ * If a worker fails, its error is thrown to the consuming thread instead of ending the run with seeds missing.
+ * <p>
+ * The number of workers can be set from the command line, e.g. {@code -Dsudoku.digThreads=8}; by default
+ * there is one per core.
+ *
+ * @author Nicols Moro
+ */
+
+class SeedGenerator {
+	
+	static final int DIG_THREADS = Integer.getInteger("sudoku.digThreads", Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * A seed puzzle ready to be propagated. A seed with no level marks the end of the work of a worker.
+	 */
+	
+	static class Seed {
+		
+		private static final Seed END = new Seed(0, 0, null, null, 0);
+		
+		final int level;
+		final int index; // within the level, from 1 on
+		final int[][] puzzle;
+		final int[][] solution;
+		final double rating; // hardest solving technique needed (see DifficultyGrader)
+		
+		Seed(int level, int index, int[][] puzzle, int[][] solution, double rating) {
+			
+			this.level = level;
+			this.index = index;
+			this.puzzle = puzzle;
+			this.solution = solution;
+			this.rating = rating;
+		}
+	}
+	
+	private final PatternPool patternPool;
+	private final LevelScheduler scheduler;
+	private final SeedIndex seedIndex;
+	private final SolverEngine engine;
+	private final BlockingQueue<Seed> seeds;
+	private final Thread[] workers;
+	private int finishedWorkers = 0; // only read and written by the consuming thread
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>(); // first error of a worker
+	
+	// Metrics
+	private final LongAdder generated = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder duplicates = new LongAdder();
+	private final LongAdder salvaged = new LongAdder(); // seeds kept although the budget ran out while digging them
+	private final LongAdder interruptedNodes = new LongAdder(); // search nodes of the digs that ran out of budget, which used to be discarded
+	private final LongAdder discardedNodes = new LongAdder(); // search nodes of the digs that were discarded all the same
+	
+	/**
+	 * Create the generator and start its workers.
+	 *
+	 * @param patternPool  Source of the seeds to be generated and of their first terminal patterns.
+	 * @param scheduler  Decides the level of the next seed of each worker, and is told how long it took.
+	 * @param seedIndex  Seeds used so far; equivalent patterns are rejected and new seeds are added.
+	 * @param engine  Solver engine used to check uniqueness while digging; each worker uses its own solver.
+	 * @param numThreads  Number of worker threads.
+	 */
+	
+	SeedGenerator(PatternPool patternPool, LevelScheduler scheduler, SeedIndex seedIndex, SolverEngine engine, int numThreads) {
+		
+		this.patternPool = patternPool;
+		this.scheduler = scheduler;
+		this.seedIndex = seedIndex;
+		this.engine = engine;
+		this.seeds = new ArrayBlockingQueue<Seed>(2*numThreads); // workers wait if storing falls behind
+		this.workers = new Thread[numThreads];
+		for (int i=0; i<numThreads; i++) {
+			workers[i] = new Thread(this::generateSeeds, "seed-generator-"+i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * Worker loop: generate seeds of the levels chosen by the scheduler until it runs out of them. If the worker
+	 * fails, its error is recorded for {@link #take} and the seed it was digging is released.
+	 */
+	
+	private void generateSeeds() {
+		
+		try {
+			try {
+				Solver solver = engine.forCurrentThread();
+				DifficultyGrader grader = new DifficultyGrader();
+				int level;
+				while ((level = scheduler.nextLevel()) != 0) {
+					long startTime = System.nanoTime();
+					Seed seed;
+					try {
+						seed = generateSeed(patternPool.take(level), solver, grader);
+					} catch (Throwable t) {
+						scheduler.failed(level);
+						throw t;
+					}
+					scheduler.finished(level, System.nanoTime() - startTime);
+					seeds.put(seed);
+				}
+			} catch (RuntimeException | Error e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				seeds.put(Seed.END);
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Dig a seed puzzle, starting from the pre-generated pattern of the entry and creating a new pattern
+	 * each time the digging fails (see {@link DigResult}) or the pattern is equivalent to a seed already used.
+	 *
+	 * @param entry  Seed to be generated.
+	 * @param solver  Solver of the calling thread.
+	 * @param grader  Grader of the calling thread.
+	 * @return The graded seed puzzle.
+	 */
+	
+	private Seed generateSeed(PatternPool.Entry entry, Solver solver, DifficultyGrader grader) {
+		
+		GeneratingAlgorithm digger = new GeneratingAlgorithm(entry.level, solver, entry.random);
+		int[][] solution = entry.pattern;
+		int[][] puzzle = null;
+		while (puzzle == null) {
+			
+			// Reject the pattern if it is equivalent to a seed already used, i.e., if its puzzles would already be in the database
+			long patternHash = CanonicalForm.hash(solution);
+			if (seedIndex.contains(patternHash)) {
+				duplicates.increment();
+				solution = TerminalPattern.createPattern(entry.random);
+				continue;
+			}
+			
+			DigResult result = digger.generatePuzzle(GeneratingAlgorithm.deepCopy(solution));
+			if (result.wasInterrupted()) {
+				interruptedNodes.add(result.nodes);
+			}
+			if (result.status == DigResult.Status.FAILED) {
+				retries.increment();
+				discardedNodes.add(result.nodes);
+				solution = TerminalPattern.createPattern(entry.random);
+			} else if (!seedIndex.add(patternHash)) {
+				duplicates.increment(); // another worker has just used an equivalent pattern
+				solution = TerminalPattern.createPattern(entry.random);
+			} else {
+				if (result.wasInterrupted()) {
+					salvaged.increment();
+				}
+				puzzle = result.puzzle;
+			}
+		}
+		
+		// Rate the seed by the hardest solving technique it needs; propagation does not change the techniques required
+		double rating = grader.grade(puzzle).rating;
+		generated.increment();
+		return new Seed(entry.level, entry.seed, puzzle, solution, rating);
+	}
+	
+	/**
+	 * Take the next generated seed, waiting for one if necessary. To be called by a single thread.
+	 *
+	 * @return A seed of any level, or null once every seed of the run has been taken.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if a worker has failed, since its seeds would be missing.
+	 */
+	
+	Seed take() throws InterruptedException {
+		
+		while (finishedWorkers < workers.length) {
+			Seed seed = seeds.take();
+			if (failure.get() != null) {
+				throw new IllegalStateException("A seed generator worker failed", failure.get());
+			}
+			if (seed != Seed.END) {
+				return seed;
+			}
+			finishedWorkers++;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return Number of seeds generated so far.
+	 */
+	
+	long getGenerated() {
+		
+		return generated.sum();
+	}
+	
+	/**
+	 * @return Summary of the metrics of the generator.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		return "Seed generator: "+getGenerated()+" seeds with "+workers.length+" workers, "
+				+retries.sum()+" retries over budget, "+salvaged.sum()+" seeds salvaged from checkpoints, "+duplicates.sum()
+				+" duplicate patterns rejected; search nodes of digs over budget: "+interruptedNodes.sum()+", of which "
+				+discardedNodes.sum()+" discarded";
+	}
+}
@@ -0,0 +1,140 @@
+package SudokuSolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the seeds already used, identified by the hash of the minlex form of their terminal pattern
+ * (see {@link CanonicalForm}). A new terminal pattern that is equivalent to one in the index would only
+ * produce puzzles from the same family, so {@link Main} rejects it before digging.
+ * <p>
+ * Each seed is recorded with the seed of the run that used it (see {@link RandomStreams}). The seeds of a run
+ * are not rejected when it is run again with the same run seed, so that it digs the same seeds and can be
+ * reproduced; they are still kept in the index.
+ * <p>
+ * The index is kept in memory and persisted between runs in a binary file, which can be set from the command
+ * line, e.g. {@code -Dsudoku.seedIndex=seeds.bin}: a header, followed by the 64-bit hash and run seed of each
+ * seed. Files of plain 64-bit hashes, as written before, are still read; their seeds belong to no run.
+ *
+ * @author Nicols Moro
+ */
+
+class SeedIndex {
+	
+	static final String INDEX_FILE = System.getProperty("sudoku.seedIndex", "seed_index.bin");
+	private static final long HEADER = 0x5365656449647832L; // "SeedIdx2", unlikely to be the hash of a seed
+	private static final long NO_RUN = Long.MIN_VALUE; // run of the seeds read from a file of plain hashes
+	
+	private final Path file;
+	private final long runSeed;
+	private final Map<Long, Long> hashes = new ConcurrentHashMap<Long, Long>(); // run seed by hash
+	private final Map<Long, Long> ownHashes = new HashMap<Long, Long>(); // seeds of previous runs with the same run seed
+	
+	/**
+	 * Load the index stored in the given file, if any.
+	 *
+	 * @param fileName  File where the index is persisted.
+	 * @param runSeed  Seed of the current run; the seeds of previous runs with the same seed are not rejected.
+	 * @throws IOException when the file exists but cannot be read.
+	 */
+	
+	SeedIndex(String fileName, long runSeed) throws IOException {
+		
+		this.file = Paths.get(fileName);
+		this.runSeed = runSeed;
+		if (Files.exists(file)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+				long first = in.readLong();
+				if (first != HEADER) {
+					hashes.put(first, NO_RUN);
+					while (true) {
+						hashes.put(in.readLong(), NO_RUN);
+					}
+				}
+				while (true) {
+					long hash = in.readLong();
+					long run = in.readLong();
+					(run == runSeed ? ownHashes : hashes).put(hash, run);
+				}
+			} catch (EOFException e) {
+				// End of the index reached
+			}
+		}
+	}
+	
+	/**
+	 * @param patternHash  Hash of the minlex form of a terminal pattern.
+	 * @return True if an equivalent pattern has already been used as a seed.
+	 */
+	
+	boolean contains(long patternHash) {
+		
+		return hashes.containsKey(patternHash);
+	}
+	
+	/**
+	 * Record a terminal pattern as used by the current run.
+	 *
+	 * @param patternHash  Hash of the minlex form of the terminal pattern.
+	 * @return False if an equivalent pattern was already in the index.
+	 */
+	
+	boolean add(long patternHash) {
+		
+		return hashes.putIfAbsent(patternHash, runSeed) == null;
+	}
+	
+	/**
+	 * @return Number of seeds in the index, including those of previous runs with the same run seed.
+	 */
+	
+	int size() {
+		
+		int size = hashes.size();
+		for (Long hash : ownHashes.keySet()) {
+			if (!hashes.containsKey(hash)) {
+				size++;
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Write the whole index to its file. It is written to a temporary file first, so that an interrupted
+	 * save does not corrupt the index of previous runs.
+	 *
+	 * @throws IOException when the file cannot be written.
+	 */
+	
+	void save() throws IOException {
+		
+		Path temp = Paths.get(file.toString()+".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+			out.writeLong(HEADER);
+			for (Map.Entry<Long, Long> seed : hashes.entrySet()) {
+				out.writeLong(seed.getKey());
+				out.writeLong(seed.getValue());
+			}
+			for (Map.Entry<Long, Long> seed : ownHashes.entrySet()) {
+				if (!hashes.containsKey(seed.getKey())) {
+					out.writeLong(seed.getKey());
+					out.writeLong(seed.getValue());
+				}
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
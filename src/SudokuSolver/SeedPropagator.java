@@ -0,0 +1,309 @@
+package SudokuSolver;
+
+/**
+ * Propagates a seed puzzle into the copies of its family (see {@link PuzzleTransform}) and writes each copy
+ * straight into its encoded form, i.e., the strings stored in the database: 9 rows of digits, each followed
+ * by a semicolon, with 0 for the empty cells.
+ * <p>
+ * The copies are grouped by geometry (the row, column and transposition moves), each of which gives 9!
+ * copies, one per relabeling of the numbers. When a geometry is set, the seed is transformed and encoded
+ * once, and the positions of each number in the encoded puzzle and solution are listed. The relabelings are
+ * then stepped through in the order of Heap's algorithm, in which each one differs from the previous one by
+ * swapping the labels of two numbers; so each new copy only takes rewriting the positions of those two
+ * numbers (18 in the solution and their givens in the puzzle) in place, and no memory is allocated.
+ * <p>
+ * Copies stepped through this way are close to each other: they share their geometry and differ in a few
+ * numbers. Alternatively, the copies can be sampled from the whole family in a random order without
+ * repeats (see {@link #emitSampled}); each copy then takes unranking its transformation and encoding the 81
+ * cells, still without allocating any memory.
+ * <p>
+ * Every {@code CHECK_INTERVAL} copies (and the first copy of each geometry), the copy is checked: the puzzle
+ * must have its empty cells in the same places as the transformed seed, each given must match the solution
+ * and the solution must be a valid grid. The interval can be set from the command line, e.g.
+ * {@code -Dsudoku.checkInterval=1} to check every copy.
+ *
+ * @author Nicols Moro
+ */
+
+class SeedPropagator {
+	
+	static final long CHECK_INTERVAL = Long.getLong("sudoku.checkInterval", 65536);
+	static final int ENCODED_LENGTH = 90; // 9 rows of 9 digits, each followed by ';'
+	private static final int[] POSITION = new int[81]; // position of each cell in the encoded form
+	
+	static {
+		for (int cell=0; cell<81; cell++) {
+			POSITION[cell] = cell/9*10 + cell%9;
+		}
+	}
+	
+	/**
+	 * Receives the copies of a seed as they are propagated.
+	 */
+	
+	interface CopySink {
+		
+		/**
+		 * @param puzzle  The encoded puzzle. The array is overwritten by the next copy.
+		 * @param solution  The encoded solution. The array is overwritten by the next copy.
+		 */
+		
+		void accept(byte[] puzzle, byte[] solution);
+	}
+	
+	private final PuzzleTransform transform = new PuzzleTransform();
+	private final int[] seedPuzzle = new int[81];
+	private final int[] seedSolution = new int[81];
+	private final int[] puzzle = new int[81]; // seed under the geometry, before relabeling
+	private final int[] solution = new int[81];
+	
+	// Encoded copy, rewritten in place
+	private final byte[] puzzleBytes = new byte[ENCODED_LENGTH];
+	private final byte[] solutionBytes = new byte[ENCODED_LENGTH];
+	
+	// Positions in the encoded form of each number (0 to 8 for the numbers 1 to 9) of the geometry
+	private final int[] solutionPositions = new int[81]; // 9 per number
+	private final int[] givenPositions = new int[81];
+	private final int[] givenStart = new int[10]; // givens of a number from givenStart[n] to givenStart[n+1]-1
+	
+	// State of Heap's algorithm: label of each number and the loop counters
+	private final byte[] labels = new byte[9];
+	private final int[] counters = new int[9];
+	private int level; // loop of Heap's algorithm being stepped
+	private boolean started;
+	private boolean sampling; // whether the last copy was sampled rather than stepped through
+	
+	private long sampled; // position of the next sampled copy in the random order of the family
+	private long emitted;
+	private long checked;
+	private long untilCheck = CHECK_INTERVAL; // copies left before the next check
+	
+	/**
+	 * Start propagating a new seed.
+	 *
+	 * @param seedPuzzle  The seed puzzle as a 2D (9x9) grid, with 0 for the empty cells.
+	 * @param seedSolution  Its solution.
+	 */
+	
+	void start(int[][] seedPuzzle, int[][] seedSolution) {
+		
+		for (int cell=0; cell<81; cell++) {
+			this.seedPuzzle[cell] = seedPuzzle[cell/9][cell%9];
+			this.seedSolution[cell] = seedSolution[cell/9][cell%9];
+		}
+		sampled = 0;
+		setGeometry(0);
+	}
+	
+	/**
+	 * Move to the copies of a geometry, starting from the one with the numbers unchanged.
+	 *
+	 * @param geometry  Index of the geometry, from 0 to {@code PuzzleTransform.GEOMETRIES-1}; the copies
+	 * obtained are those with the indices from {@code geometry*9!} to {@code (geometry+1)*9!-1}, in another order.
+	 */
+	
+	void setGeometry(int geometry) {
+		
+		transform.unrank((long) geometry*PuzzleTransform.RELABELINGS);
+		transform.apply(seedPuzzle, puzzle);
+		transform.apply(seedSolution, solution);
+		
+		int[] count = new int[9];
+		int[] givens = new int[10];
+		for (int cell=0; cell<81; cell++) {
+			int num = solution[cell]-1;
+			int pos = POSITION[cell];
+			solutionPositions[num*9 + count[num]++] = pos;
+			if (puzzle[cell] != 0) {
+				givens[num+1]++;
+			}
+			solutionBytes[pos] = (byte) ('0'+solution[cell]);
+			puzzleBytes[pos] = (byte) ('0'+puzzle[cell]);
+		}
+		for (int r=0; r<9; r++) {
+			solutionBytes[r*10+9] = ';';
+			puzzleBytes[r*10+9] = ';';
+		}
+		for (int num=0; num<9; num++) {
+			givenStart[num+1] = givenStart[num] + givens[num+1];
+			givens[num+1] = givenStart[num];
+		}
+		for (int cell=0; cell<81; cell++) {
+			if (puzzle[cell] != 0) {
+				givenPositions[givens[puzzle[cell]]++] = POSITION[cell];
+			}
+		}
+		
+		for (int num=0; num<9; num++) {
+			labels[num] = (byte) ('1'+num);
+			counters[num] = 0;
+		}
+		level = 1;
+		started = false;
+		sampling = false;
+	}
+	
+	/**
+	 * Emit the next copies of the current geometry.
+	 *
+	 * @param maxCopies  Most copies to be emitted.
+	 * @param sink  Receives each copy.
+	 * @return Number of copies emitted; fewer than {@code maxCopies} once the geometry has run out of them.
+	 */
+	
+	long emit(long maxCopies, CopySink sink) {
+		
+		long count = 0;
+		if (!started && maxCopies > 0) {
+			started = true;
+			emitted++;
+			check();
+			sink.accept(puzzleBytes, solutionBytes);
+			count++;
+		}
+		
+		// Iterative form of Heap's algorithm: each step swaps the labels of two numbers
+		while (count < maxCopies && level < 9) {
+			if (counters[level] < level) {
+				int other = (level & 1) == 0 ? 0 : counters[level];
+				swapLabels(other, level);
+				counters[level]++;
+				level = 1;
+				
+				emitted++;
+				if (--untilCheck == 0) {
+					untilCheck = CHECK_INTERVAL;
+					check();
+				}
+				sink.accept(puzzleBytes, solutionBytes);
+				count++;
+			} else {
+				counters[level] = 0;
+				level++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Emit the next copies of the seed in a random order over its whole family, with no copy emitted twice
+	 * (unless the family is exhausted; the order then starts over).
+	 *
+	 * @param maxCopies  Most copies to be emitted.
+	 * @param order  Random order of the transformations, over all the {@code PuzzleTransform.GROUP_SIZE} indices
+	 * (i.e., geometries times relabelings).
+	 * It must be the same for all the calls on a seed.
+	 * @param sink  Receives each copy.
+	 * @return Number of copies emitted, i.e., {@code maxCopies}.
+	 */
+	
+	long emitSampled(long maxCopies, IndexPermutation order, CopySink sink) {
+		
+		sampling = true;
+		for (long count=0; count<maxCopies; count++) {
+			transform.unrank(order.get(sampled));
+			sampled = (sampled+1) % order.size();
+			
+			int[] cellOf = transform.cellOf;
+			int[] relabel = transform.relabel;
+			for (int cell=0; cell<81; cell++) {
+				int pos = POSITION[cell];
+				int source = cellOf[cell];
+				solutionBytes[pos] = (byte) ('0'+relabel[seedSolution[source]]);
+				puzzleBytes[pos] = (byte) ('0'+relabel[seedPuzzle[source]]);
+			}
+			
+			emitted++;
+			if (--untilCheck == 0) {
+				untilCheck = CHECK_INTERVAL;
+				check();
+			}
+			sink.accept(puzzleBytes, solutionBytes);
+		}
+		return maxCopies;
+	}
+	
+	/**
+	 * @return The index of the transformation (see {@link PuzzleTransform}) that gives the last copy emitted
+	 * from the seed, e.g., to store the copy as a derived record (see {@link PuzzleCodec}).
+	 */
+	
+	long copyIndex() {
+		
+		if (sampling) {
+			return transform.getIndex();
+		}
+		return transform.getIndex() + PuzzleTransform.rankRelabeling(labels);
+	}
+	
+	/**
+	 * Swap the labels of two numbers, rewriting their positions in the encoded copy.
+	 */
+	
+	private void swapLabels(int a, int b) {
+		
+		byte label = labels[a];
+		labels[a] = labels[b];
+		labels[b] = label;
+		relabel(a);
+		relabel(b);
+	}
+	
+	private void relabel(int num) {
+		
+		byte label = labels[num];
+		for (int i=num*9; i<num*9+9; i++) {
+			solutionBytes[solutionPositions[i]] = label;
+		}
+		for (int i=givenStart[num]; i<givenStart[num+1]; i++) {
+			puzzleBytes[givenPositions[i]] = label;
+		}
+	}
+	
+	/**
+	 * Check the current copy.
+	 *
+	 * @throws IllegalStateException if an empty cell has been filled or a given has been removed, a given does
+	 * not match the solution or the solution is not a valid grid.
+	 */
+	
+	private void check() {
+		
+		checked++;
+		int[] rows = new int[9];
+		int[] cols = new int[9];
+		int[] blocks = new int[9];
+		for (int cell=0; cell<81; cell++) {
+			int pos = POSITION[cell];
+			int num = solutionBytes[pos]-'0';
+			int given = puzzleBytes[pos]-'0';
+			boolean empty = seedPuzzle[transform.cellOf[cell]] == 0;
+			if ((given == 0) != empty) {
+				throw new IllegalStateException("Propagated copy "+emitted+": cell "+cell+" should "+(empty ? "be empty" : "be a given"));
+			}
+			if (given != 0 && given != num) {
+				throw new IllegalStateException("Propagated copy "+emitted+": given "+given+" at cell "+cell+" does not match the solution");
+			}
+			if (num < 1 || num > 9) {
+				throw new IllegalStateException("Propagated copy "+emitted+": invalid number at cell "+cell);
+			}
+			rows[BoardState.ROW_OF[cell]] |= 1 << (num-1);
+			cols[BoardState.COL_OF[cell]] |= 1 << (num-1);
+			blocks[BoardState.BLOCK_OF[cell]] |= 1 << (num-1);
+		}
+		for (int unit=0; unit<9; unit++) {
+			if (rows[unit] != BoardState.ALL_DIGITS || cols[unit] != BoardState.ALL_DIGITS || blocks[unit] != BoardState.ALL_DIGITS) {
+				throw new IllegalStateException("Propagated copy "+emitted+": the solution is not a valid grid");
+			}
+		}
+	}
+	
+	/**
+	 * @return Number of copies checked so far.
+	 */
+	
+	long getChecked() {
+		
+		return checked;
+	}
+}
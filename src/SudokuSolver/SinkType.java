@@ -0,0 +1,74 @@
+package SudokuSolver;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Available implementations of {@link PuzzleSink}. The sink of a run can be set from the command line with
+ * a system property, e.g. {@code -Dsudoku.sink=GZIP_NDJSON -Dsudoku.sinkPath=puzzles.ndjson.gz}; the path is
+ * the file to be written or, for an embedded database, its JDBC URL. The default files are named after the
+ * run, so that mining minimal puzzles does not replace the puzzles of the levels.
+ *
+ * @author Nicols Moro
+ */
+
+enum SinkType {
+	
+	POSTGRES {
+		PuzzleSink open(String path, String run) throws IOException, SQLException {
+			return new PostgresSink();
+		}
+	},
+	GZIP_NDJSON {
+		PuzzleSink open(String path, String run) throws IOException {
+			return new TextFileSink(path == null ? run+".ndjson.gz" : path, true);
+		}
+	},
+	GZIP_CSV {
+		PuzzleSink open(String path, String run) throws IOException {
+			return new TextFileSink(path == null ? run+".csv.gz" : path, false);
+		}
+	},
+	BINARY_FILE {
+		PuzzleSink open(String path, String run) throws IOException {
+			return new BinaryFileSink(path == null ? run+".bin" : path);
+		}
+	},
+	EMBEDDED_DB {
+		PuzzleSink open(String path, String run) throws SQLException {
+			return new EmbeddedDbSink(path == null ? "jdbc:h2:./sudoku" : path);
+		}
+	};
+	
+	/**
+	 * Open a new sink of this type.
+	 *
+	 * @param path  File to be written, or JDBC URL of the embedded database; if null, a default one is used.
+	 * The PostgreSQL sink ignores it (see {@link DatabaseManagement}).
+	 * @param run  Name of the default file, without its extension: "puzzles" or "minimal". The databases
+	 * ignore it, since they keep the minimal puzzles in their own table.
+	 * @return The new sink.
+	 * @throws IOException if the file cannot be created.
+	 * @throws SQLException if the database cannot be set up.
+	 */
+	
+	abstract PuzzleSink open(String path, String run) throws IOException, SQLException;
+	
+	/**
+	 * Reads the type of sink to be used from a system property.
+	 *
+	 * @param property  Name of the system property.
+	 * @param defaultType  Type to be used if the property is not set.
+	 * @return The selected type.
+	 * @throws IllegalArgumentException if the property does not name any type.
+	 */
+	
+	static SinkType fromProperty(String property, SinkType defaultType) {
+		
+		String name = System.getProperty(property);
+		if (name == null) {
+			return defaultType;
+		}
+		return SinkType.valueOf(name.trim().toUpperCase().replace('-', '_'));
+	}
+}
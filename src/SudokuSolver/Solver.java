@@ -0,0 +1,62 @@
+package SudokuSolver;
+
+/**
+ * Common interface of the Sudoku solving engines used throughout the package, so that the
+ * engine of each phase (filling terminal patterns, checking uniqueness while digging, verifying
+ * stored puzzles) can be chosen per run without modifying its callers. See {@link SolverEngine}.
+ * <p>
+ * Implementations may reuse internal buffers between calls and are not meant to be shared by threads.
+ * 
+ * @author Nicols Moro
+ */
+
+interface Solver {
+	
+	/**
+	 * Attempts to solve the given puzzle within the given search budget, filling the grid in place.
+	 * 
+	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle. Empty cells are filled by 0.
+	 * @param budget  Search budget to draw from; it may be shared with other searches.
+	 * @return True if a solution has been found within the budget, in which case it is written in the grid.
+	 * Invalid grids (i.e., with repeated numbers in a row, column or block) are never solved.
+	 */
+	
+	boolean solve(int[][] sudoku_puzzle, SearchBudget budget);
+	
+	/**
+	 * Counts the solutions of a puzzle within the given search budget, stopping as soon as {@code limit} of them have been found.
+	 * For instance, a limit of 2 is enough to tell whether a puzzle has a unique solution.
+	 * 
+	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle. Empty cells are filled by 0. It is left unchanged.
+	 * @param limit  Maximum number of solutions to look for (at least 1).
+	 * @param budget  Search budget to draw from; it may be shared with other searches.
+	 * @return The number of solutions found, from 0 to {@code limit}, or -1 if the budget was exhausted before the search finished.
+	 */
+	
+	int countSolutions(int[][] sudoku_puzzle, int limit, SearchBudget budget);
+	
+	/**
+	 * Same as {@link #solve(int[][], SearchBudget)}, without any limit on the search.
+	 * 
+	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle. Empty cells are filled by 0.
+	 * @return True if a solution has been found, in which case it is written in the grid.
+	 */
+	
+	default boolean solve(int[][] sudoku_puzzle) {
+		
+		return solve(sudoku_puzzle, SearchBudget.UNLIMITED);
+	}
+	
+	/**
+	 * Same as {@link #countSolutions(int[][], int, SearchBudget)}, without any limit on the search.
+	 * 
+	 * @param sudoku_puzzle  A 2D (9x9) grid representing a Sudoku puzzle. Empty cells are filled by 0. It is left unchanged.
+	 * @param limit  Maximum number of solutions to look for (at least 1).
+	 * @return The number of solutions found, from 0 to {@code limit}.
+	 */
+	
+	default int countSolutions(int[][] sudoku_puzzle, int limit) {
+		
+		return countSolutions(sudoku_puzzle, limit, SearchBudget.UNLIMITED);
+	}
+}
@@ -0,0 +1,63 @@
+package SudokuSolver;
+
+/**
+ * Available implementations of {@link Solver}. The engine used in each phase of a run can be
+ * set in {@link Main} or overridden from the command line with a system property, e.g.
+ * {@code -Dsudoku.digSolver=DANCING_LINKS}.
+ * 
+ * @author Nicols Moro
+ */
+
+enum SolverEngine {
+	
+	BACKTRACKING {
+		Solver create() {
+			return new BacktrackingAlgorithm();
+		}
+	},
+	DANCING_LINKS {
+		Solver create() {
+			return new DancingLinks();
+		}
+	};
+	
+	private final ThreadLocal<Solver> perThread = ThreadLocal.withInitial(this::create);
+	
+	/**
+	 * Returns the solver of this engine confined to the calling thread, created on its first use.
+	 * Since solvers keep their buffers between calls, this lets every thread reuse a single workspace.
+	 * 
+	 * @return The solver of the calling thread.
+	 */
+	
+	Solver forCurrentThread() {
+		
+		return perThread.get();
+	}
+	
+	/**
+	 * Create a new solver of this engine. Each thread should use its own instance.
+	 * 
+	 * @return A new solver.
+	 */
+	
+	abstract Solver create();
+	
+	/**
+	 * Reads the engine to be used from a system property.
+	 * 
+	 * @param property  Name of the system property.
+	 * @param defaultEngine  Engine to be used if the property is not set.
+	 * @return The selected engine.
+	 * @throws IllegalArgumentException if the property does not name any engine.
+	 */
+	
+	static SolverEngine fromProperty(String property, SolverEngine defaultEngine) {
+		
+		String name = System.getProperty(property);
+		if (name == null) {
+			return defaultEngine;
+		}
+		return SolverEngine.valueOf(name.trim().toUpperCase());
+	}
+}
@@ -1,99 +1,91 @@
 package SudokuSolver;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.SplittableRandom;
 
 /**
- * A Las Vegas algorithm is used to generated valid Sudoku terminal patterns. A 'terminal pattern' is
- * a fully solved Sudoku grid which can be then "dug" (by emptying some of its cells) until a new puzzle
- * is obtained, the solution of which is the pattern itself. This class provides a method that can fulfill
- * this task in a matter of milliseconds.
+ * Generates random Sudoku terminal patterns. A 'terminal pattern' is a fully solved Sudoku grid which can
+ * be then "dug" (by emptying some of its cells) until a new puzzle is obtained, the solution of which is the
+ * pattern itself.
+ * <p>
+ * The grid is filled directly from empty by a depth-first search that tries the candidates of each cell in
+ * random order and always branches on the cell with the fewest candidates. The candidate masks propagate
+ * every number to its peers: forced cells (a single candidate) are filled first and a cell left without
+ * candidates ends the branch at once. Since an empty grid can always be completed, the search hardly ever
+ * backtracks, so no search budget or retries are needed. This class provides a method that fulfills this
+ * task in a matter of microseconds.
  * 
  * @author Nicols Moro
  */
 
 class TerminalPattern {
 	
-	private static int givens = 11; // Confirmed as best choice to diversify puzzles based on 1000 tests on n=6 to n=20 for timeLimit=100
-	private static long timeLimitPerPattern = 100; // in milliseconds
+	private static final int[][] EMPTY_GRID = new int[9][9];
+	private static final ThreadLocal<BoardState> WORKSPACE = ThreadLocal.withInitial(BoardState::new); // one board per thread
 	
 	/**
-	 * Attempts to generate a terminal pattern of n givens (default: 11) under the specified time (default: 100ms).
-	 * If the process fails, a new attempt is made.
+	 * Generates a random terminal pattern.
 	 * 
+	 * @param random  Source of the random choices made while filling the grid (see {@link RandomStreams}).
 	 * @return  A full terminal pattern.
 	 */
 	
-	static int[][] createPattern() {
+	static int[][] createPattern(SplittableRandom random) {
 		
-		int[][] emptyGrid = {
-								{0, 0, 0, 0, 0, 0, 0, 0, 0}, 
-								{0, 0, 0, 0, 0, 0, 0, 0, 0}, 
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-								{0, 0, 0, 0, 0, 0, 0, 0, 0},
-							};
+		BoardState board = WORKSPACE.get();
+		board.load(EMPTY_GRID);
+		fillRandomly(board, random);
 		
-		boolean underTimeLimit = false;
-		BoardState board = new BoardState(emptyGrid);
+		int[][] pattern = new int[9][9];
+		board.copyTo(pattern);
+		return pattern;
+	}
+	
+	/**
+	 * Recursively fill the board, trying the candidates of the most constrained cell in random order.
+	 * 
+	 * @param board  A valid board to be filled. Every number written is recorded in its trail.
+	 * @param random  Source of the random choices.
+	 * @return True once the board is full; false if it cannot be completed, in which case the caller has to undo its changes.
+	 */
+	
+	private static boolean fillRandomly(BoardState board, SplittableRandom random) {
 		
-		while (!underTimeLimit) {
-			
-			final long START_TIME = System.currentTimeMillis(); // start timer
-			
-			/* Generate an initial random pattern of n givens that satisfies Sudoku's rules */
-			
-			int randomRow;
-			int randomCol;
-			int trialNum;
-			
-			int[] validNums;
-			boolean validTrial;
-			int givensCount = 0;
-			while (givensCount < givens) {
-				
-				randomRow = ThreadLocalRandom.current().nextInt(0, 9);
-				randomCol = ThreadLocalRandom.current().nextInt(0, 9);
-				trialNum = ThreadLocalRandom.current().nextInt(1, 10);
-				
-				validNums = board.getValidNumbers(randomRow, randomCol);
-				
-				/* Try each of the possible numbers in this position. If none found, try with new coordinates. */
-				
-				validTrial = false;
-				for (int n : validNums) {
-					if (n == trialNum) {
-						validTrial = true;
-						break;
-					}
-				}
-				
-				if (validTrial) {
-					board.grid[randomRow][randomCol] = trialNum;
-					givensCount++;
-					
+		if (board.numEmptyCells == 0) {
+			return true;
+		}
+		
+		// Minimum remaining values: a cell with one candidate is filled at once, and one with none is a dead end
+		int cell = -1;
+		int fewestCandidates = 10;
+		for (int i=0; i<81 && fewestCandidates > 1; i++) {
+			if (board.cells[i] == 0) {
+				int numCandidates = Integer.bitCount(board.getCandidates(i));
+				if (numCandidates < fewestCandidates) {
+					fewestCandidates = numCandidates;
+					cell = i;
 				}
 			}
+		}
+		
+		int candidates = board.getCandidates(cell);
+		while (candidates != 0) {
 			
-			long currentTime = System.currentTimeMillis();
-			long timeLimit = timeLimitPerPattern - (currentTime - START_TIME);
-			
-			/*Use the BacktrackingSolver class to fill the grid up*/
-			
-			boolean solutionFound;
-			if (timeLimit > 0) {
-				solutionFound = BacktrackingAlgorithm.gridSolver(board.grid, timeLimit);
-			} else {
-				solutionFound = false;
+			// Pick one of the remaining candidates uniformly at random
+			int skip = random.nextInt(Integer.bitCount(candidates));
+			int others = candidates;
+			for (int i=0; i<skip; i++) {
+				others &= others-1;
 			}
+			int bit = others & -others;
+			candidates &= ~bit;
 			
-			if (solutionFound) {
-				underTimeLimit = true; // Terminal pattern generated successfully
+			int mark = board.trailSize;
+			board.assign(cell, Integer.numberOfTrailingZeros(bit)+1);
+			if (fillRandomly(board, random)) {
+				return true;
 			}
+			board.undoTo(mark);
 		}
-		return board.grid;
-	}	
+		return false;
+	}
 }
@@ -0,0 +1,152 @@
+package SudokuSolver;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the puzzles into a GZIP-compressed text file, one line per puzzle, either as NDJSON
+ * ({@code {"level":1,"rating":"4.12","puzzle":"...","solution":"..."}}) or as CSV (with the header
+ * {@code level,rating,puzzle,solution}), so that they can be generated on machines without a database and
+ * loaded later. The minimal puzzles have their number of givens instead of the level and the rating
+ * ({@code {"givens":21,...}}, or the header {@code givens,puzzle,solution}). The puzzles and solutions are
+ * encoded as in the database (see {@link SeedPropagator}), and need no quoting or escaping.
+ * <p>
+ * The lines are written into a chunk of {@code CHUNK_BYTES} bytes, which is compressed as a whole once full.
+ * Compressing takes far longer than generating the puzzles, so the fastest level is used by default: the files
+ * are about 10% larger than with the default level of GZIP, which is 4 times slower. The level (1 to 9) can be set
+ * from the command line, e.g. {@code -Dsudoku.sinkCompression=6}.
+ *
+ * @author Nicols Moro
+ */
+
+class TextFileSink implements PuzzleSink {
+	
+	static final int COMPRESSION = Integer.getInteger("sudoku.sinkCompression", Deflater.BEST_SPEED);
+	private static final int MAX_LINE_BYTES = 256; // longer than any line
+	
+	private final Path file;
+	private final boolean json;
+	private final OutputStream out;
+	private final byte[] chunk = new byte[Math.max(CHUNK_BYTES, MAX_LINE_BYTES)];
+	private int length; // bytes in the chunk
+	
+	// Parts of the lines of the current seed around the puzzle and the solution
+	private byte[] prefix;
+	private final byte[] separator;
+	private final byte[] suffix;
+	private boolean started; // once the CSV header has been written
+	
+	private long rows;
+	private long bytes; // before compression
+	private final long startTime = System.nanoTime();
+	
+	/**
+	 * @param fileName  File to be written; it is replaced if it exists.
+	 * @param json  True for NDJSON, false for CSV.
+	 * @throws IOException if the file cannot be created.
+	 */
+	
+	TextFileSink(String fileName, boolean json) throws IOException {
+		
+		this.file = Paths.get(fileName);
+		this.json = json;
+		this.out = new GZIPOutputStream(new FileOutputStream(file.toFile()), 1 << 16) {
+			{
+				def.setLevel(COMPRESSION);
+			}
+		};
+		this.separator = (json ? "\",\"solution\":\"" : ",").getBytes(StandardCharsets.US_ASCII);
+		this.suffix = (json ? "\"}\n" : "\n").getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	@Override
+	public void startSeed(SeedGenerator.Seed seed, String rating) {
+		
+		start("level,rating,puzzle,solution\n");
+		String start = json ? "{\"level\":"+seed.level+",\"rating\":\""+rating+"\",\"puzzle\":\"" : seed.level+","+rating+",";
+		prefix = start.getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	@Override
+	public void add(byte[] puzzle, byte[] solution, long index) throws IOException {
+		
+		if (chunk.length-length < MAX_LINE_BYTES) {
+			flushChunk();
+		}
+		put(prefix);
+		put(puzzle);
+		put(separator);
+		put(solution);
+		put(suffix);
+		rows++;
+	}
+	
+	@Override
+	public void addMinimal(byte[] puzzle, byte[] solution, int givens) throws IOException {
+		
+		start("givens,puzzle,solution\n");
+		String start = json ? "{\"givens\":"+givens+",\"puzzle\":\"" : givens+",";
+		prefix = start.getBytes(StandardCharsets.US_ASCII);
+		add(puzzle, solution, 0);
+	}
+	
+	/**
+	 * Write the CSV header before the first line, since it depends on whether the puzzles are minimal.
+	 */
+	
+	private void start(String header) {
+		
+		if (!json && !started) {
+			put(header.getBytes(StandardCharsets.US_ASCII));
+		}
+		started = true;
+	}
+	
+	private void put(byte[] part) {
+		
+		System.arraycopy(part, 0, chunk, length, part.length);
+		length += part.length;
+	}
+	
+	private void flushChunk() throws IOException {
+		
+		out.write(chunk, 0, length);
+		bytes += length;
+		length = 0;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		
+		try {
+			flushChunk();
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * @return Summary of the rows written and the compression achieved.
+	 */
+	
+	@Override
+	public String toString() {
+		
+		double seconds = (System.nanoTime()-startTime)/1e9;
+		long compressed = 0;
+		try {
+			compressed = Files.size(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return String.format("%s sink: %d rows in %.1f s (%.0f rows/s) to %s, %d bytes compressed to %d",
+				json ? "NDJSON" : "CSV", rows, seconds, rows/Math.max(seconds, 1e-9), file, bytes, compressed);
+	}
+}
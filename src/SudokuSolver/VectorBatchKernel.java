@@ -0,0 +1,91 @@
+package SudokuSolver;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels of {@link GridBatch}, built on the (incubating) JDK Vector API. Each vector holds the same
+ * cell of as many consecutive grids as the hardware allows, so every bitwise operation handles that many
+ * grids at once. The kernels stop at the last full vector and return where the scalar kernels must go on.
+ * <p>
+ * This class is only loaded when the {@code jdk.incubator.vector} module is present.
+ *
+ * @author Nicols Moro
+ */
+
+class VectorBatchKernel {
+	
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	
+	/**
+	 * Vectorised {@link GridBatch#validate}.
+	 *
+	 * @param batch  The batch of grids.
+	 * @param valid  Array overwritten with the result for each grid.
+	 * @return Index of the first grid that has not been checked.
+	 */
+	
+	static int validate(GridBatch batch, boolean[] valid) {
+		
+		int[] bits = batch.bits;
+		int capacity = batch.capacity;
+		int upperBound = SPECIES.loopBound(batch.size);
+		
+		for (int g=0; g<upperBound; g+=SPECIES.length()) {
+			IntVector conflicts = IntVector.zero(SPECIES);
+			for (int[] unit : BoardState.UNITS) {
+				IntVector seen = IntVector.zero(SPECIES);
+				for (int cell : unit) {
+					IntVector bit = IntVector.fromArray(SPECIES, bits, cell*capacity + g);
+					conflicts = conflicts.or(seen.and(bit));
+					seen = seen.or(bit);
+				}
+			}
+			conflicts.compare(VectorOperators.EQ, 0).intoArray(valid, g);
+		}
+		return upperBound;
+	}
+	
+	/**
+	 * Vectorised {@link GridBatch#computeCandidates}.
+	 *
+	 * @param batch  The batch of grids.
+	 * @param candidates  Array overwritten with the candidate masks.
+	 * @return Index of the first grid whose candidates have not been computed.
+	 */
+	
+	static int computeCandidates(GridBatch batch, int[] candidates) {
+		
+		int[] bits = batch.bits;
+		int[] unitMasks = batch.unitMasks;
+		int capacity = batch.capacity;
+		int upperBound = SPECIES.loopBound(batch.size);
+		
+		for (int unit=0; unit<27; unit++) {
+			for (int g=0; g<upperBound; g+=SPECIES.length()) {
+				IntVector used = IntVector.zero(SPECIES);
+				for (int cell : BoardState.UNITS[unit]) {
+					used = used.or(IntVector.fromArray(SPECIES, bits, cell*capacity + g));
+				}
+				used.intoArray(unitMasks, unit*capacity + g);
+			}
+		}
+		
+		IntVector allDigits = IntVector.broadcast(SPECIES, BoardState.ALL_DIGITS);
+		for (int cell=0; cell<81; cell++) {
+			int row = BoardState.ROW_OF[cell]*capacity;
+			int col = (9+BoardState.COL_OF[cell])*capacity;
+			int block = (18+BoardState.BLOCK_OF[cell])*capacity;
+			for (int g=0; g<upperBound; g+=SPECIES.length()) {
+				IntVector used = IntVector.fromArray(SPECIES, unitMasks, row+g)
+						.or(IntVector.fromArray(SPECIES, unitMasks, col+g))
+						.or(IntVector.fromArray(SPECIES, unitMasks, block+g));
+				VectorMask<Integer> filled = IntVector.fromArray(SPECIES, bits, cell*capacity + g).compare(VectorOperators.NE, 0);
+				used.not().and(allDigits).blend(0, filled).intoArray(candidates, cell*capacity + g);
+			}
+		}
+		return upperBound;
+	}
+}
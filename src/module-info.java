@@ -1,3 +1,5 @@
 module sudokugame {
 	requires java.sql;
+	requires org.postgresql.jdbc;
+	requires static jdk.incubator.vector;
 }
\ No newline at end of file
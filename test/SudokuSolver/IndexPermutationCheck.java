@@ -0,0 +1,154 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that {@link IndexPermutation} is a bijection of its range, and that the copies of a seed sampled in
+ * its order are the ones it gives. The permutation is enumerated in full for every pair of radices up to
+ * {@code SMALL_RADIX}, for a single digit of up to 9! and for the shapes {@code GEOMETRIES x 9} and
+ * {@code 6 x 9!}, with the same code path as the real one; every index must come out once. The real range of
+ * {@code GEOMETRIES x 9!} has over 10^12 indices and cannot be enumerated, so {@code SAMPLED_POSITIONS}
+ * distinct positions of it are mapped instead: no index may come out twice, where a random function would
+ * repeat about 40 of them. Last, {@link SeedPropagator#emitSampled} must give, for each of {@code SAMPLED_COPIES}
+ * copies, the index of the order at that position as {@link SeedPropagator#copyIndex()}, and the copy
+ * unranked from it. The keys and positions are drawn from a fixed seed, so that the check is repeatable.
+ * <p>
+ * Run from the project root, with the sources and the checks on the class path (see the readme).
+ *
+ * @author Nicols Moro
+ */
+
+class IndexPermutationCheck {
+	
+	private static final int SMALL_RADIX = 64;
+	private static final int SAMPLED_POSITIONS = 10000000;
+	private static final int SAMPLED_COPIES = 200000;
+	private static final long RANDOM_SEED = 20240729L;
+	
+	/**
+	 * @param args  Not used.
+	 * @throws IllegalStateException if an index comes out of range or twice, or a sampled copy does not match
+	 * its position in the order.
+	 */
+	
+	public static void main(String[] args) {
+		
+		SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+		
+		// Every index once, over whole ranges
+		int ranges = 0;
+		for (int high=1; high<=SMALL_RADIX; high++) {
+			for (int low=1; low<=SMALL_RADIX; low++) {
+				checkBijection(new IndexPermutation(high, low, random));
+				ranges++;
+			}
+		}
+		for (int radix : new int[] {2, 9, 1000, PuzzleTransform.RELABELINGS}) {
+			checkBijection(new IndexPermutation(1, radix, random));
+			checkBijection(new IndexPermutation(radix, 1, random));
+			ranges += 2;
+		}
+		checkBijection(new IndexPermutation(PuzzleTransform.GEOMETRIES, 9, random));
+		checkBijection(new IndexPermutation(6, PuzzleTransform.RELABELINGS, random));
+		ranges += 2;
+		System.out.printf("%d permutations enumerated in full%n", ranges);
+		
+		// No repeats among distinct positions of the real range: a run of consecutive ones, then random ones
+		IndexPermutation order = new IndexPermutation(PuzzleTransform.GEOMETRIES, PuzzleTransform.RELABELINGS, random);
+		long[] positions = new long[SAMPLED_POSITIONS];
+		long first = random.nextLong(PuzzleTransform.GROUP_SIZE-SAMPLED_POSITIONS/2);
+		for (int i=0; i<SAMPLED_POSITIONS/2; i++) {
+			positions[i] = first+i;
+		}
+		for (int i=SAMPLED_POSITIONS/2; i<SAMPLED_POSITIONS; i++) {
+			positions[i] = random.nextLong(PuzzleTransform.GROUP_SIZE);
+		}
+		Arrays.sort(positions);
+		int positionRepeats = 0;
+		long[] indices = new long[SAMPLED_POSITIONS];
+		int count = 0;
+		for (int i=0; i<SAMPLED_POSITIONS; i++) {
+			if (i > 0 && positions[i] == positions[i-1]) {
+				positionRepeats++;
+				continue;
+			}
+			long index = order.get(positions[i]);
+			if (index < 0 || index >= PuzzleTransform.GROUP_SIZE) {
+				throw new IllegalStateException("Position "+positions[i]+" gives the index "+index+", out of range");
+			}
+			indices[count++] = index;
+		}
+		Arrays.sort(indices, 0, count);
+		for (int i=1; i<count; i++) {
+			if (indices[i] == indices[i-1]) {
+				throw new IllegalStateException("Two positions give the index "+indices[i]);
+			}
+		}
+		System.out.printf("%d distinct positions of %d give distinct indices (%d random positions repeated)%n",
+				count, PuzzleTransform.GROUP_SIZE, positionRepeats);
+				
+		// Sampled copies against the order and the copies unranked from it
+		int[][] solution = TerminalPattern.createPattern(random);
+		int[][] puzzle = new int[9][9];
+		for (int cell=0; cell<81; cell++) {
+			puzzle[cell/9][cell%9] = random.nextInt(3) == 0 ? solution[cell/9][cell%9] : 0;
+		}
+		SeedPropagator propagator = new SeedPropagator();
+		propagator.start(puzzle, solution);
+		PuzzleTransform transform = new PuzzleTransform();
+		byte[] expectedPuzzle = new byte[SeedPropagator.ENCODED_LENGTH];
+		byte[] expectedSolution = new byte[SeedPropagator.ENCODED_LENGTH];
+		long[] position = {0};
+		propagator.emitSampled(SAMPLED_COPIES, order, (puzzleBytes, solutionBytes) -> {
+			long index = order.get(position[0]);
+			if (propagator.copyIndex() != index) {
+				throw new IllegalStateException("Copy "+position[0]+": index "+propagator.copyIndex()+" instead of "+index);
+			}
+			transform.unrank(index);
+			encode(transform, puzzle, expectedPuzzle);
+			encode(transform, solution, expectedSolution);
+			if (!Arrays.equals(puzzleBytes, expectedPuzzle) || !Arrays.equals(solutionBytes, expectedSolution)) {
+				throw new IllegalStateException("Copy "+position[0]+" does not match its index "+index);
+			}
+			position[0]++;
+		});
+		System.out.printf("%d sampled copies match the order%n", position[0]);
+		System.out.println("OK");
+	}
+	
+	/**
+	 * @throws IllegalStateException if the permutation maps a position out of its range, or two positions to
+	 * the same index.
+	 */
+	
+	private static void checkBijection(IndexPermutation order) {
+		
+		int size = (int) order.size();
+		BitSet seen = new BitSet(size);
+		for (int position=0; position<size; position++) {
+			long index = order.get(position);
+			if (index < 0 || index >= size || seen.get((int) index)) {
+				throw new IllegalStateException("Permutation of "+size+": position "+position+" gives the index "+index+", out of range or repeated");
+			}
+			seen.set((int) index);
+		}
+	}
+	
+	/**
+	 * Encode the transformed copy of a grid as {@link SeedPropagator} does.
+	 */
+	
+	private static void encode(PuzzleTransform transform, int[][] grid, byte[] encoded) {
+		
+		int[][] copy = new int[9][9];
+		transform.apply(grid, copy);
+		for (int r=0; r<9; r++) {
+			for (int c=0; c<9; c++) {
+				encoded[r*10+c] = (byte) ('0'+copy[r][c]);
+			}
+			encoded[r*10+9] = ';';
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package SudokuSolver;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the round trips of the binary formats of {@link PuzzleCodec}. {@code BATCHES} batches of random
+ * puzzles, from no givens to all of them, are packed one by one from each of the three encodings of a puzzle
+ * (81 cells, a 2D grid and the strings of the database), which must give the same bytes, and in bulk with
+ * {@link PuzzleCodec#encodeAll}, which must give the same bytes again; the records must then be read back as the
+ * puzzles, one by one and in bulk. The derived records must read back the transformation indices at the edges of
+ * their fields, up to {@code GROUP_SIZE-1}, and {@code RANDOM_INDICES} random ones, and each copy rebuilt by
+ * {@link PuzzleCodec#derive} must be the one given by the transformation of its index. The puzzles and indices
+ * are drawn from a fixed seed, so that the check is repeatable.
+ * <p>
+ * Run from the project root, with the sources and the checks on the class path (see the readme).
+ *
+ * @author Nicols Moro
+ */
+
+class PuzzleCodecCheck {
+	
+	private static final int BATCHES = 200;
+	private static final int BATCH_SIZE = 100;
+	private static final int RANDOM_INDICES = 1000000;
+	private static final int DERIVED_COPIES = 100000;
+	private static final long RANDOM_SEED = 20240805L;
+	
+	/**
+	 * @param args  Not used.
+	 * @throws IllegalStateException if a record does not read back as what was written, the encodings of a
+	 * puzzle disagree, or a derived copy is not the one of its transformation.
+	 */
+	
+	public static void main(String[] args) {
+		
+		SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+		int[] puzzles = new int[81*BATCH_SIZE];
+		int[] solutions = new int[81*BATCH_SIZE];
+		int[] decodedPuzzles = new int[81*BATCH_SIZE];
+		int[] decodedSolutions = new int[81*BATCH_SIZE];
+		ByteBuffer single = PuzzleCodec.allocate(BATCH_SIZE, PuzzleCodec.RECORD_BYTES);
+		ByteBuffer fromStrings = PuzzleCodec.allocate(BATCH_SIZE, PuzzleCodec.RECORD_BYTES);
+		ByteBuffer bulk = PuzzleCodec.allocate(BATCH_SIZE, PuzzleCodec.RECORD_BYTES);
+		int[] puzzle = new int[81];
+		int[] solution = new int[81];
+		
+		// Packed records
+		for (int batch=0; batch<BATCHES; batch++) {
+			single.clear();
+			fromStrings.clear();
+			bulk.clear();
+			for (int i=0; i<BATCH_SIZE; i++) {
+				int[][] solutionGrid = TerminalPattern.createPattern(random);
+				int[][] puzzleGrid = new int[9][9];
+				int givens = i == 0 ? 0 : i == 1 ? 81 : random.nextInt(82);
+				for (int cell=0; cell<81; cell++) {
+					boolean given = random.nextInt(81) < givens;
+					puzzleGrid[cell/9][cell%9] = given ? solutionGrid[cell/9][cell%9] : 0;
+					puzzles[i*81+cell] = puzzleGrid[cell/9][cell%9];
+					solutions[i*81+cell] = solutionGrid[cell/9][cell%9];
+				}
+				int start = single.position();
+				PuzzleCodec.encode(Arrays.copyOfRange(puzzles, i*81, i*81+81), Arrays.copyOfRange(solutions, i*81, i*81+81), single);
+				PuzzleCodec.encode(encode(puzzleGrid), encode(solutionGrid), fromStrings);
+				byte[] record = Arrays.copyOfRange(single.array(), start, single.position());
+				if (record.length != PuzzleCodec.RECORD_BYTES || !Arrays.equals(record, PuzzleCodec.encode(puzzleGrid, solutionGrid))) {
+					throw new IllegalStateException("Batch "+batch+", puzzle "+i+": the cells and the 2D grid are packed differently");
+				}
+			}
+			PuzzleCodec.encodeAll(puzzles, solutions, BATCH_SIZE, bulk);
+			if (!Arrays.equals(single.array(), fromStrings.array()) || !Arrays.equals(single.array(), bulk.array())) {
+				throw new IllegalStateException("Batch "+batch+": the strings, or the bulk encoding, are packed differently");
+			}
+			
+			single.flip();
+			for (int i=0; i<BATCH_SIZE; i++) {
+				PuzzleCodec.decode(single, puzzle, solution);
+				if (!Arrays.equals(puzzle, 0, 81, puzzles, i*81, i*81+81) || !Arrays.equals(solution, 0, 81, solutions, i*81, i*81+81)) {
+					throw new IllegalStateException("Batch "+batch+", puzzle "+i+": the record does not read back");
+				}
+			}
+			bulk.flip();
+			PuzzleCodec.decodeAll(bulk, decodedPuzzles, decodedSolutions, BATCH_SIZE);
+			if (!Arrays.equals(decodedPuzzles, puzzles) || !Arrays.equals(decodedSolutions, solutions) || bulk.hasRemaining()) {
+				throw new IllegalStateException("Batch "+batch+": the records do not read back in bulk");
+			}
+		}
+		System.out.printf("%d packed records read back%n", BATCHES*BATCH_SIZE);
+		
+		// Derived records: the index alone, then the copy rebuilt from it
+		long[] edges = {0, 1, PuzzleTransform.RELABELINGS, 0xFFFFFFFFL, 0x100000000L, 1L << 40,
+				PuzzleTransform.GROUP_SIZE-1};
+		ByteBuffer indices = PuzzleCodec.allocate(edges.length+RANDOM_INDICES, PuzzleCodec.INDEX_BYTES);
+		long[] written = new long[edges.length+RANDOM_INDICES];
+		for (int i=0; i<written.length; i++) {
+			written[i] = i < edges.length ? edges[i] : random.nextLong(PuzzleTransform.GROUP_SIZE);
+			PuzzleCodec.encodeIndex(written[i], indices);
+		}
+		if (indices.hasRemaining()) {
+			throw new IllegalStateException("Derived records of "+indices.position()/written.length+" bytes instead of "+PuzzleCodec.INDEX_BYTES);
+		}
+		indices.flip();
+		for (long index : written) {
+			long read = PuzzleCodec.readIndex(indices);
+			if (read != index) {
+				throw new IllegalStateException("Index "+index+" read back as "+read);
+			}
+		}
+		System.out.printf("%d transformation indices read back%n", written.length);
+		
+		PuzzleTransform transform = new PuzzleTransform();
+		int[][] seedSolution = TerminalPattern.createPattern(random);
+		int[][] seedPuzzle = new int[9][9];
+		int[] seedPuzzleCells = new int[81];
+		int[] seedSolutionCells = new int[81];
+		for (int cell=0; cell<81; cell++) {
+			seedPuzzle[cell/9][cell%9] = random.nextInt(3) == 0 ? seedSolution[cell/9][cell%9] : 0;
+			seedPuzzleCells[cell] = seedPuzzle[cell/9][cell%9];
+			seedSolutionCells[cell] = seedSolution[cell/9][cell%9];
+		}
+		int[][] puzzleCopy = new int[9][9];
+		int[][] solutionCopy = new int[9][9];
+		for (int i=0; i<DERIVED_COPIES; i++) {
+			long index = written[i];
+			PuzzleCodec.derive(seedPuzzleCells, seedSolutionCells, index, transform, puzzle, solution);
+			PuzzleTransform expected = PuzzleTransform.of(index);
+			expected.apply(seedPuzzle, puzzleCopy);
+			expected.apply(seedSolution, solutionCopy);
+			for (int cell=0; cell<81; cell++) {
+				if (puzzle[cell] != puzzleCopy[cell/9][cell%9] || solution[cell] != solutionCopy[cell/9][cell%9]) {
+					throw new IllegalStateException("Index "+index+": the derived copy differs from its transformation at cell "+cell);
+				}
+			}
+		}
+		System.out.printf("%d derived copies match their transformations%n", DERIVED_COPIES);
+		System.out.println("OK");
+	}
+	
+	/**
+	 * @return The grid encoded as a string of the database (see {@link SeedPropagator}).
+	 */
+	
+	private static byte[] encode(int[][] grid) {
+		
+		byte[] encoded = new byte[SeedPropagator.ENCODED_LENGTH];
+		for (int r=0; r<9; r++) {
+			for (int c=0; c<9; c++) {
+				encoded[r*10+c] = (byte) ('0'+grid[r][c]);
+			}
+			encoded[r*10+9] = ';';
+		}
+		return encoded;
+	}
+}
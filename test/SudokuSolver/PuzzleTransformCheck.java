@@ -0,0 +1,148 @@
+package SudokuSolver;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the indexing of the transformation group by {@link PuzzleTransform}: {@code rank(unrank(i))} must give
+ * back {@code i} for the indices at the edges of the digits of the index and for {@code RANDOM_INDICES} random
+ * ones, indices out of range must be rejected, and every transformation must keep a full grid valid. It then
+ * checks {@link SeedPropagator#copyIndex()} in the order of Heap's algorithm: over all the 9! copies of a few
+ * geometries, each copy must be the one given by unranking its index, and the indices must cover those of the
+ * geometry exactly once. The indices are drawn from a fixed seed, so that the check is repeatable.
+ * <p>
+ * Run from the project root, with the sources and the checks on the class path (see the readme).
+ *
+ * @author Nicols Moro
+ */
+
+class PuzzleTransformCheck {
+	
+	private static final int RANDOM_INDICES = 1000000;
+	private static final int VALIDITY_SAMPLES = 100000;
+	private static final long RANDOM_SEED = 20240722L;
+	
+	/**
+	 * @param args  Not used.
+	 * @throws IllegalStateException if an index is not ranked back, an index out of range is accepted, a
+	 * transformation breaks a grid, or a copy does not match its index.
+	 */
+	
+	public static void main(String[] args) {
+		
+		SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+		PuzzleTransform transform = new PuzzleTransform();
+		
+		// Edges of the mixed-radix digits of the index: relabeling, then 4x2 permutations of 3 and the transposition
+		long[] edges = {0, 1, PuzzleTransform.RELABELINGS-1, PuzzleTransform.RELABELINGS, 6L*PuzzleTransform.RELABELINGS-1,
+				216L*PuzzleTransform.RELABELINGS, 1296L*PuzzleTransform.RELABELINGS-1, (PuzzleTransform.GEOMETRIES/2L)*PuzzleTransform.RELABELINGS,
+				PuzzleTransform.GROUP_SIZE-PuzzleTransform.RELABELINGS, PuzzleTransform.GROUP_SIZE-1};
+		for (long index : edges) {
+			checkRank(transform, index);
+		}
+		for (int i=0; i<RANDOM_INDICES; i++) {
+			checkRank(transform, random.nextLong(PuzzleTransform.GROUP_SIZE));
+		}
+		for (long index : new long[] {-1, PuzzleTransform.GROUP_SIZE, Long.MAX_VALUE}) {
+			try {
+				transform.unrank(index);
+				throw new IllegalStateException("Index out of range accepted: "+index);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		System.out.printf("%d indices ranked back%n", edges.length+RANDOM_INDICES);
+		
+		// Every transformation keeps a full grid valid
+		int[][] grid = TerminalPattern.createPattern(random);
+		int[][] copy = new int[9][9];
+		for (int i=0; i<VALIDITY_SAMPLES; i++) {
+			long index = random.nextLong(PuzzleTransform.GROUP_SIZE);
+			transform.unrank(index);
+			transform.apply(grid, copy);
+			if (!isValid(copy)) {
+				throw new IllegalStateException("Transformation "+index+" breaks a full grid");
+			}
+		}
+		System.out.printf("%d transformed grids valid%n", VALIDITY_SAMPLES);
+		
+		// Copies stepped through by Heap's algorithm, compared with the copies unranked from their indices
+		int[][] solution = TerminalPattern.createPattern(random);
+		int[][] puzzle = new int[9][9];
+		for (int cell=0; cell<81; cell++) {
+			puzzle[cell/9][cell%9] = random.nextInt(3) == 0 ? solution[cell/9][cell%9] : 0;
+		}
+		SeedPropagator propagator = new SeedPropagator();
+		propagator.start(puzzle, solution);
+		for (int geometry : new int[] {0, random.nextInt(PuzzleTransform.GEOMETRIES), PuzzleTransform.GEOMETRIES-1}) {
+			propagator.setGeometry(geometry);
+			long first = (long) geometry*PuzzleTransform.RELABELINGS;
+			BitSet seen = new BitSet(PuzzleTransform.RELABELINGS);
+			byte[] expectedPuzzle = new byte[SeedPropagator.ENCODED_LENGTH];
+			byte[] expectedSolution = new byte[SeedPropagator.ENCODED_LENGTH];
+			long copies = propagator.emit(Long.MAX_VALUE, (puzzleBytes, solutionBytes) -> {
+				long index = propagator.copyIndex();
+				if (index < first || index >= first+PuzzleTransform.RELABELINGS || seen.get((int) (index-first))) {
+					throw new IllegalStateException("Geometry "+geometry+": index "+index+" out of the geometry or repeated");
+				}
+				seen.set((int) (index-first));
+				transform.unrank(index);
+				encode(transform, puzzle, expectedPuzzle);
+				encode(transform, solution, expectedSolution);
+				if (!Arrays.equals(puzzleBytes, expectedPuzzle) || !Arrays.equals(solutionBytes, expectedSolution)) {
+					throw new IllegalStateException("Geometry "+geometry+": the copy does not match its index "+index);
+				}
+			});
+			if (copies != PuzzleTransform.RELABELINGS) {
+				throw new IllegalStateException("Geometry "+geometry+": "+copies+" copies instead of 9!");
+			}
+		}
+		System.out.println("3 geometries of 9! copies match their indices");
+		System.out.println("OK");
+	}
+	
+	private static void checkRank(PuzzleTransform transform, long index) {
+		
+		transform.unrank(index);
+		if (transform.rank() != index || transform.getIndex() != index) {
+			throw new IllegalStateException("Index "+index+" ranked back as "+transform.rank());
+		}
+	}
+	
+	/**
+	 * Encode the transformed copy of a grid as {@link SeedPropagator} does.
+	 */
+	
+	private static void encode(PuzzleTransform transform, int[][] grid, byte[] encoded) {
+		
+		int[][] copy = new int[9][9];
+		transform.apply(grid, copy);
+		for (int r=0; r<9; r++) {
+			for (int c=0; c<9; c++) {
+				encoded[r*10+c] = (byte) ('0'+copy[r][c]);
+			}
+			encoded[r*10+9] = ';';
+		}
+	}
+	
+	/**
+	 * @return True if every row, column and box of the grid holds the digits 1 to 9.
+	 */
+	
+	private static boolean isValid(int[][] grid) {
+		
+		for (int i=0; i<9; i++) {
+			int row = 0, column = 0, box = 0;
+			for (int j=0; j<9; j++) {
+				row |= 1 << grid[i][j];
+				column |= 1 << grid[j][i];
+				box |= 1 << grid[i/3*3+j/3][i%3*3+j%3];
+			}
+			if (row != 0x3FE || column != 0x3FE || box != 0x3FE) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
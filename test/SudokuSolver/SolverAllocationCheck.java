@@ -0,0 +1,104 @@
+package SudokuSolver;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the solving path of every {@link SolverEngine} allocates nothing once its workspace is warm
+ * (see {@link BacktrackingAlgorithm}): after a warm-up, the bytes allocated by the calling thread are read
+ * around a loop of {@code solve} and {@code countSolutions} calls on puzzles with one, several or no
+ * solutions, and the check fails if they exceed {@code MAX_BYTES_PER_CALL} per call on average.
+ * <p>
+ * Run from the project root, with the sources and the checks on the class path (see the readme).
+ *
+ * @author Nicols Moro
+ */
+
+class SolverAllocationCheck {
+	
+	private static final int WARMUP_ROUNDS = 2000;
+	private static final int ROUNDS = 20000;
+	private static final double MAX_BYTES_PER_CALL = 1; // a few stray bytes (e.g., from the JIT) are tolerated
+	
+	// Puzzles with a unique solution, from easy to hard (the last one has 17 givens)
+	private static final String[] PUZZLES = {
+		"003020600900305001001806400008102900700000008006708200002609500800203009005010300",
+		"200080300060070084030500209000105408000000000402706000301007040720040060004010003",
+		"000000907000420180000705026100904000050000040000507009920108000034059000507000000",
+		"400000805030000000000700000020000060000080400000010000000603070500200000104000000",
+		"520006000000000701300000000000400800600000050000000000041800000000030020008700000",
+		"000000010400000000020000000000050407008000300001090000300400200050100000000806000",
+	};
+	private static final String MANY_SOLUTIONS = "003020600900305001001806400008102900700000008006708200002609500800203009000000000";
+	private static final String NO_SOLUTION = "553020600900305001001806400008102900700000008006708200002609500800203009005010300";
+	
+	/**
+	 * @param args  Not used.
+	 * @throws IllegalStateException if a puzzle is not solved as expected or an engine allocates on its solving path.
+	 */
+	
+	public static void main(String[] args) {
+		
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		
+		int[][][] puzzles = new int[PUZZLES.length+2][][];
+		for (int i=0; i<PUZZLES.length; i++) {
+			puzzles[i] = parse(PUZZLES[i]);
+		}
+		puzzles[PUZZLES.length] = parse(MANY_SOLUTIONS);
+		puzzles[PUZZLES.length+1] = parse(NO_SOLUTION);
+		int[][] grid = new int[9][9];
+		
+		boolean failed = false;
+		for (SolverEngine engine : SolverEngine.values()) {
+			Solver solver = engine.create();
+			run(solver, puzzles, grid, WARMUP_ROUNDS);
+			long before = threads.getThreadAllocatedBytes(threadId);
+			long calls = run(solver, puzzles, grid, ROUNDS);
+			long allocated = threads.getThreadAllocatedBytes(threadId)-before;
+			double perCall = (double) allocated/calls;
+			System.out.printf("%-14s %d calls, %d bytes allocated (%.3f per call)%n", engine, calls, allocated, perCall);
+			failed |= perCall > MAX_BYTES_PER_CALL;
+		}
+		if (failed) {
+			throw new IllegalStateException("A solver allocates on its solving path");
+		}
+		System.out.println("OK");
+	}
+	
+	/**
+	 * Solve every puzzle and count the solutions of each one, the given number of times.
+	 *
+	 * @return Number of solver calls made.
+	 */
+	
+	private static long run(Solver solver, int[][][] puzzles, int[][] grid, int rounds) {
+		
+		long calls = 0;
+		for (int round=0; round<rounds; round++) {
+			for (int i=0; i<puzzles.length; i++) {
+				int expected = i < PUZZLES.length ? 1 : i == PUZZLES.length ? 2 : 0;
+				if (solver.countSolutions(puzzles[i], 2) != expected) {
+					throw new IllegalStateException("Puzzle "+i+" should have "+(expected == 2 ? "several solutions" : expected+" solution(s)"));
+				}
+				for (int r=0; r<9; r++) {
+					System.arraycopy(puzzles[i][r], 0, grid[r], 0, 9);
+				}
+				if (solver.solve(grid) != (expected > 0)) {
+					throw new IllegalStateException("Puzzle "+i+" was "+(expected > 0 ? "not solved" : "solved"));
+				}
+				calls += 2;
+			}
+		}
+		return calls;
+	}
+	
+	private static int[][] parse(String puzzle) {
+		
+		int[][] grid = new int[9][9];
+		for (int cell=0; cell<81; cell++) {
+			grid[cell/9][cell%9] = puzzle.charAt(cell)-'0';
+		}
+		return grid;
+	}
+}
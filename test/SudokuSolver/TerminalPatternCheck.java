@@ -0,0 +1,129 @@
+package SudokuSolver;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks the terminal patterns of {@link TerminalPattern} and measures how fast they are generated. Every
+ * pattern must be a valid full grid, and the digits must be spread uniformly: over {@code PATTERNS} patterns,
+ * the counts of the 9 digits in each cell, and of each digit over the 81 cells, are compared with their
+ * expected value by a chi-square test, which fails if the statistic exceeds its critical value at
+ * {@code P_VALUE}. The patterns are drawn from a fixed seed, so that the check is repeatable; the throughput
+ * is measured on a single thread after a warm-up.
+ * <p>
+ * Run from the project root, with the sources and the checks on the class path (see the readme).
+ *
+ * @author Nicols Moro
+ */
+
+class TerminalPatternCheck {
+	
+	private static final int WARMUP_PATTERNS = 20000;
+	private static final int PATTERNS = 90000; // 10000 expected per cell and digit
+	private static final long RANDOM_SEED = 20240601L;
+	private static final double Z_SCORE = 4.265; // one-sided normal quantile of P_VALUE
+	private static final double P_VALUE = 1e-5; // per test, so that the 90 tests hardly ever fail by chance
+	
+	/**
+	 * @param args  Not used.
+	 * @throws IllegalStateException if a pattern is not a valid full grid or the digits are not spread uniformly.
+	 */
+	
+	public static void main(String[] args) {
+		
+		SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+		for (int i=0; i<WARMUP_PATTERNS; i++) {
+			TerminalPattern.createPattern(random);
+		}
+		
+		long[][] counts = new long[81][10]; // per cell and digit
+		long start = System.nanoTime();
+		for (int i=0; i<PATTERNS; i++) {
+			int[][] pattern = TerminalPattern.createPattern(random);
+			for (int cell=0; cell<81; cell++) {
+				counts[cell][pattern[cell/9][cell%9]]++;
+			}
+			if (!isValid(pattern)) {
+				throw new IllegalStateException("Pattern "+i+" is not a valid full grid");
+			}
+		}
+		double seconds = (System.nanoTime()-start)/1e9;
+		System.out.printf("%d patterns in %.2f s (%.0f patterns/s, %.1f us per pattern)%n",
+				PATTERNS, seconds, PATTERNS/seconds, seconds*1e6/PATTERNS);
+				
+		double expected = PATTERNS/9.0;
+		double cellCritical = criticalValue(8);
+		double digitCritical = criticalValue(80);
+		double worstCell = 0;
+		double worstDigit = 0;
+		boolean failed = false;
+		
+		// Each cell: are the 9 digits equally likely?
+		for (int cell=0; cell<81; cell++) {
+			double chiSquare = 0;
+			for (int digit=1; digit<=9; digit++) {
+				chiSquare += square(counts[cell][digit]-expected)/expected;
+			}
+			if (chiSquare > cellCritical) {
+				System.out.printf("Cell %d: chi-square %.1f > %.1f%n", cell, chiSquare, cellCritical);
+				failed = true;
+			}
+			worstCell = Math.max(worstCell, chiSquare);
+		}
+		
+		// Each digit: is it equally likely in the 81 cells?
+		for (int digit=1; digit<=9; digit++) {
+			double chiSquare = 0;
+			for (int cell=0; cell<81; cell++) {
+				chiSquare += square(counts[cell][digit]-expected)/expected;
+			}
+			if (chiSquare > digitCritical) {
+				System.out.printf("Digit %d: chi-square %.1f > %.1f%n", digit, chiSquare, digitCritical);
+				failed = true;
+			}
+			worstDigit = Math.max(worstDigit, chiSquare);
+		}
+		
+		System.out.printf("Highest chi-square per cell %.1f (critical %.1f, 8 degrees of freedom), per digit %.1f (critical %.1f, 80)%n",
+				worstCell, cellCritical, worstDigit, digitCritical);
+		if (failed) {
+			throw new IllegalStateException("The digits of the terminal patterns are not spread uniformly");
+		}
+		System.out.println("OK");
+	}
+	
+	/**
+	 * @return Critical value of the chi-square distribution at {@code P_VALUE}, by the Wilson-Hilferty approximation.
+	 */
+	
+	private static double criticalValue(int degrees) {
+		
+		double v = 2.0/(9*degrees);
+		double root = 1-v+Z_SCORE*Math.sqrt(v);
+		return degrees*root*root*root;
+	}
+	
+	private static double square(double x) {
+		
+		return x*x;
+	}
+	
+	/**
+	 * @return True if every row, column and box of the grid holds the digits 1 to 9.
+	 */
+	
+	private static boolean isValid(int[][] grid) {
+		
+		for (int i=0; i<9; i++) {
+			int row = 0, column = 0, box = 0;
+			for (int j=0; j<9; j++) {
+				row |= 1 << grid[i][j];
+				column |= 1 << grid[j][i];
+				box |= 1 << grid[i/3*3+j/3][i%3*3+j%3];
+			}
+			if (row != 0x3FE || column != 0x3FE || box != 0x3FE) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,118 @@
+package SudokuSolver;
+
+import java.util.SplittableRandom;
+
+import jdk.incubator.vector.IntVector;
+
+/**
+ * Checks that the SIMD kernels of {@link GridBatch#validate} and {@link GridBatch#computeCandidates} (see
+ * {@link VectorBatchKernel}) give the same results as the scalar ones for every grid: batches of full valid
+ * grids, grids with some cells emptied, grids with two cells of a row swapped (which breaks a column) and grids
+ * of random numbers go through both kernels, for batch sizes that are and are not a multiple of the vector
+ * length, so that the scalar tail after the last full vector is checked as well. The grids are drawn from a fixed seed, so that the check is repeatable.
+ * <p>
+ * Run from the project root, with the sources and the checks on the class path (see the readme); the
+ * {@code jdk.incubator.vector} module must be added.
+ *
+ * @author Nicols Moro
+ */
+
+class VectorBatchCheck {
+	
+	private static final int CAPACITY = 1000;
+	private static final int[] SIZES = {1, 3, 7, 8, 9, 15, 16, 17, 33, 999, 1000};
+	private static final int ROUNDS = 20; // batches per size
+	private static final long RANDOM_SEED = 20240715L;
+	
+	/**
+	 * @param args  Not used.
+	 * @throws IllegalStateException if the kernels disagree on a grid, a kernel gets a constructed grid wrong (e.g.,
+	 * leaves an empty cell of a valid grid without candidates), or
+	 * the vector module is missing.
+	 */
+	
+	public static void main(String[] args) {
+		
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			throw new IllegalStateException("Run with --add-modules jdk.incubator.vector");
+		}
+		
+		SplittableRandom random = new SplittableRandom(RANDOM_SEED);
+		GridBatch batch = new GridBatch(CAPACITY);
+		boolean[] expected = new boolean[CAPACITY]; // by construction, or null for random grids
+		boolean[] known = new boolean[CAPACITY];
+		boolean[] scalar = new boolean[CAPACITY];
+		boolean[] vector = new boolean[CAPACITY];
+		int[] scalarCandidates = new int[81*CAPACITY];
+		int[] vectorCandidates = new int[81*CAPACITY];
+		long grids = 0;
+		long invalid = 0;
+		
+		for (int size : SIZES) {
+			for (int round=0; round<ROUNDS; round++) {
+				batch.clear();
+				for (int g=0; g<size; g++) {
+					int[][] grid = TerminalPattern.createPattern(random);
+					known[g] = true;
+					expected[g] = true;
+					switch (random.nextInt(4)) {
+						case 0: // full and valid
+							break;
+						case 1: // some cells emptied, still valid
+							for (int i=random.nextInt(60); i>0; i--) {
+								grid[random.nextInt(9)][random.nextInt(9)] = 0;
+							}
+							break;
+						case 2: // two different numbers of a row swapped: their columns repeat a number
+							int row = random.nextInt(9);
+							int a = random.nextInt(9);
+							int b = (a+1+random.nextInt(8)) % 9;
+							int temp = grid[row][a];
+							grid[row][a] = grid[row][b];
+							grid[row][b] = temp;
+							expected[g] = false;
+							break;
+						default: // random numbers, almost always invalid
+							for (int cell=0; cell<81; cell++) {
+								grid[cell/9][cell%9] = random.nextInt(10);
+							}
+							known[g] = false;
+					}
+					batch.add(grid);
+				}
+				
+				batch.validateScalar(0, scalar);
+				int start = VectorBatchKernel.validate(batch, vector);
+				batch.validateScalar(start, vector);
+				batch.computeCandidatesScalar(0, scalarCandidates);
+				start = VectorBatchKernel.computeCandidates(batch, vectorCandidates);
+				batch.computeCandidatesScalar(start, vectorCandidates);
+				
+				for (int g=0; g<size; g++) {
+					if (scalar[g] != vector[g]) {
+						throw new IllegalStateException("Batch of "+size+", grid "+g+": scalar kernel "+scalar[g]+", vector kernel "+vector[g]);
+					}
+					if (known[g] && scalar[g] != expected[g]) {
+						throw new IllegalStateException("Batch of "+size+", grid "+g+": validated as "+scalar[g]+" instead of "+expected[g]);
+					}
+					for (int cell=0; cell<81; cell++) {
+						int i = cell*CAPACITY + g;
+						if (scalarCandidates[i] != vectorCandidates[i]) {
+							throw new IllegalStateException("Batch of "+size+", grid "+g+", cell "+cell+": candidates "
+									+Integer.toBinaryString(scalarCandidates[i])+" by the scalar kernel, "+Integer.toBinaryString(vectorCandidates[i])+" by the vector kernel");
+						}
+					}
+					if (known[g] && expected[g] && batch.hasDeadCell(scalarCandidates, g)) {
+						throw new IllegalStateException("Batch of "+size+", grid "+g+": a cell of a completable grid has no candidates");
+					}
+					invalid += scalar[g] ? 0 : 1;
+				}
+				grids += size;
+			}
+		}
+		
+		System.out.printf("%d grids in batches of %d sizes (%d invalid), %d lanes per vector%n",
+				grids, SIZES.length, invalid, IntVector.SPECIES_PREFERRED.length());
+		System.out.println("OK");
+	}
+}